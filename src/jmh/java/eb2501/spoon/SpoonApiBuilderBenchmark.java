@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import spoon.SpoonAPI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpoonApiBuilderBenchmark {
+
+    @Param({"500"})
+    public int files;
+
+    private File folder;
+    private List<File> inputs;
+    private List<File> classpath;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("spoon-jmh").toFile();
+        inputs = new ArrayList<>();
+        for (int i = 0; i < files; ++i) {
+            final File file = new File(folder, String.format("synthetic/Type%d.java", i));
+            FileUtils.writeStringToFile(file, String.format("package synthetic; class Type%d {}", i), StandardCharsets.UTF_8);
+            inputs.add(file);
+        }
+        classpath = new ArrayList<>();
+        for (final String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classpath.add(new File(entry));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public SpoonAPI build() {
+
+        // Only the configuration, the model itself gets built by LauncherBenchmark
+        return new SpoonApiBuilder()
+                .withLoggingLevel("ERROR")
+                .withComplianceLevel(8)
+                .withAutoImports(true)
+                .withPreserveLineNumbers(false)
+                .withTabulationSize(4)
+                .withPreserveComments(true)
+                .withSkipSelfChecks(false)
+                .withEncoding(StandardCharsets.UTF_8)
+                .withInputSources(inputs)
+                .withSourceClasspath(classpath)
+                .withProcessorNames("eb2501.spoon.gradle.TypeProcessor", "eb2501.spoon.gradle.TypeRefProcessor")
+                .build();
+    }
+}
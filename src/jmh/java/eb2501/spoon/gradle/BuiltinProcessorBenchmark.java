@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import spoon.Launcher;
+import spoon.OutputType;
+import spoon.processing.Processor;
+import spoon.reflect.factory.Factory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BuiltinProcessorBenchmark {
+
+    @Param({"2000"})
+    public int files;
+
+    @Param({"true", "false"})
+    public boolean fuse;
+
+    private File folder;
+    private Factory factory;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        folder = Files.createTempDirectory("spoon-jmh").toFile();
+        SyntheticSources.generate(folder, files, 20);
+    }
+
+    @Setup(Level.Iteration)
+    public void build() {
+
+        // The processors strip the suffixes, so every iteration needs a fresh model
+        final Launcher launcher = new Launcher();
+        launcher.getEnvironment().setOutputType(OutputType.NO_OUTPUT);
+        launcher.getModelBuilder().addInputSource(folder);
+        launcher.buildModel();
+        factory = launcher.getFactory();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public Factory process() {
+        final ProcessingEngine engine = new ProcessingEngine(factory, fuse);
+        final List<Processor<?>> builtins = Arrays.asList(new TypeProcessor(), new TypeRefProcessor());
+        engine.process(
+                Collections.singletonList(builtins),
+                Collections.singletonList(factory.Package().getRootPackage())
+        );
+        return factory;
+    }
+}
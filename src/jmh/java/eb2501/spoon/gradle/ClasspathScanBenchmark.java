@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClasspathScanBenchmark {
+    private static final String PROPERTIES_PATH = "META-INF/spoon-bundle.properties";
+
+    @Param({"1000"})
+    public int jars;
+
+    @Param({"200"})
+    public int classesPerJar;
+
+    private File folder;
+    private File[] classpath;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("spoon-jmh").toFile();
+        final byte[] payload = new byte[512];
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < jars; ++i) {
+            final File file = new File(folder, String.format("library%d.jar", i));
+            try (final JarOutputStream ostream = new JarOutputStream(new FileOutputStream(file))) {
+                for (int j = 0; j < classesPerJar; ++j) {
+                    ostream.putNextEntry(new JarEntry(String.format("library%d/Class%d.class", i, j)));
+                    ostream.write(payload);
+                    ostream.closeEntry();
+                }
+
+                // One JAR out of fifty is a bundle
+                if (i % 50 == 0) {
+                    ostream.putNextEntry(new JarEntry(PROPERTIES_PATH));
+                    ostream.write(String.format(
+                            "processor.P.path=library%d.Processor%nprocessor.P.consumes=library%d.Annotation%n",
+                            i,
+                            i
+                    ).getBytes(StandardCharsets.ISO_8859_1));
+                    ostream.closeEntry();
+                }
+            }
+            files.add(file);
+        }
+        classpath = files.toArray(new File[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public int sequentialJarFile() throws IOException {
+
+        // What ProcessorGraph used to do, resources closed for fairness
+        int count = 0;
+        for (final File file : classpath) {
+            try (final JarFile jar = new JarFile(file)) {
+                final JarEntry entry = jar.getJarEntry(PROPERTIES_PATH);
+                if (entry != null) {
+                    try (final InputStream istream = jar.getInputStream(entry)) {
+                        final Properties props = new Properties();
+                        props.load(istream);
+                        count += props.size();
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int sequentialCentralDirectory() throws IOException {
+        int count = 0;
+        for (final File file : classpath) {
+            final Properties props = ProcessorGraph.scanJar(file);
+            if (props != null) {
+                count += props.size();
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public List<String> parallelCentralDirectory() throws IOException {
+        final ProcessorGraph graph = new ProcessorGraph();
+        graph.readClasspath(classpath);
+        return graph.getProcessors();
+    }
+}
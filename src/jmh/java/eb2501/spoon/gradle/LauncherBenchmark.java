@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import eb2501.spoon.SpoonApiBuilder;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LauncherBenchmark {
+
+    @Param({"500"})
+    public int files;
+
+    private File folder;
+    private File sources;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        folder = Files.createTempDirectory("spoon-jmh").toFile();
+        sources = new File(folder, "src");
+        SyntheticSources.generate(sources, files, 10);
+    }
+
+    @Setup(Level.Iteration)
+    public void clean() throws IOException {
+        output = new File(folder, "generated");
+        FileUtils.deleteDirectory(output);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public File run() {
+
+        // Parsing, processing and printing, the way spoonCompile used to do it
+        new SpoonApiBuilder()
+                .withInputSource(sources)
+                .withOutputDirectory(output)
+                .withProcessorInstances(new TypeProcessor(), new TypeRefProcessor())
+                .build()
+                .run();
+        return output;
+    }
+}
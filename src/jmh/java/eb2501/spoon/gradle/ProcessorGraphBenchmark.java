@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessorGraphBenchmark {
+
+    @Param({"DEEP", "WIDE"})
+    public String shape;
+
+    @Param({"100", "1000"})
+    public int processors;
+
+    private File folder;
+    private ProcessorGraph graph;
+
+    @Setup
+    public void setup() throws IOException {
+
+        // DEEP is a single chain A0 -> A1 -> ..., WIDE has A0 producing everything else
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < processors; ++i) {
+            builder.append(String.format("processor.P%d.path=synthetic.Processor%d%n", i, i));
+            builder.append(String.format("processor.P%d.consumes=synthetic.Annotation%d%n", i, i));
+            if (shape.equals("DEEP")) {
+                if (i + 1 < processors) {
+                    builder.append(String.format("processor.P%d.produces=synthetic.Annotation%d%n", i, i + 1));
+                }
+            } else if (i == 0) {
+                final StringBuilder produces = new StringBuilder();
+                for (int j = 1; j < processors; ++j) {
+                    if (j > 1) {
+                        produces.append(',');
+                    }
+                    produces.append(String.format("synthetic.Annotation%d", j));
+                }
+                builder.append(String.format("processor.P0.produces=%s%n", produces));
+            }
+        }
+        folder = Files.createTempDirectory("spoon-jmh").toFile();
+        FileUtils.writeStringToFile(
+                new File(folder, "META-INF/spoon-bundle.properties"),
+                builder.toString(),
+                StandardCharsets.ISO_8859_1
+        );
+        graph = new ProcessorGraph();
+        graph.readClasspath(folder);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public List<String> getProcessors() {
+        return graph.getProcessors();
+    }
+
+    @Benchmark
+    public List<List<String>> getStages() {
+        return graph.getStages(a -> true);
+    }
+}
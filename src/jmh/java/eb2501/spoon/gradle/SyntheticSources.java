@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class SyntheticSources {
+
+    private SyntheticSources() {}
+
+    static String getName(final int index) {
+        return String.format("Type%d%s", index, Constants.SPOON_SUFFIX);
+    }
+
+    static void generate(final File folder, final int files, final int packages) throws IOException {
+
+        // Every type references its two predecessors, so that the model is full of type references
+        for (int i = 0; i < files; ++i) {
+            final String pkg = String.format("synthetic.pkg%d", i % packages);
+            final StringBuilder builder = new StringBuilder();
+            builder.append(String.format("package %s;%n%n", pkg));
+            builder.append(String.format("public class %s {%n", getName(i)));
+            builder.append(String.format("    private int value = %d;%n", i));
+            for (int j = Math.max(0, i - 2); j < i; ++j) {
+                final String other = String.format("synthetic.pkg%d.%s", j % packages, getName(j));
+                builder.append(String.format("    private %s field%d;%n", other, j));
+                builder.append(String.format("    public %s getField%d() { return field%d; }%n", other, j, j));
+            }
+            builder.append(String.format("    public int compute(final int input) {%n"));
+            builder.append(String.format("        int result = input;%n"));
+            builder.append(String.format("        for (int k = 0; k < value; ++k) {%n"));
+            builder.append(String.format("            result = (result * 31) ^ k;%n"));
+            builder.append(String.format("        }%n"));
+            builder.append(String.format("        return result;%n"));
+            builder.append(String.format("    }%n"));
+            builder.append(String.format("    public static class Nested {%n"));
+            builder.append(String.format("        private %s owner;%n", getName(i)));
+            builder.append(String.format("    }%n"));
+            builder.append(String.format("}%n"));
+            final File file = new File(folder, String.format("%s/%s.java", pkg.replace('.', '/'), getName(i)));
+            FileUtils.writeStringToFile(file, builder.toString(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+class ClassStubs {
+    private static final int CODE_ABSENT = -1;
+
+    private ClassStubs() {}
+
+    private static void copy(final ByteBuffer buffer, final DataOutputStream ostream, final int length) throws IOException {
+        final byte[] data = new byte[length];
+        buffer.get(data);
+        ostream.write(data);
+    }
+
+    private static void copyMembers(
+            final ByteBuffer buffer,
+            final DataOutputStream ostream,
+            final int code,
+            final boolean methods
+    ) throws IOException {
+        final int count = buffer.getShort() & 0xffff;
+        ostream.writeShort(count);
+        for (int i = 0; i < count; ++i) {
+
+            // access_flags, name_index, descriptor_index
+            copy(buffer, ostream, 6);
+            copyAttributes(buffer, ostream, methods ? code : CODE_ABSENT);
+        }
+    }
+
+    private static void copyAttributes(final ByteBuffer buffer, final DataOutputStream ostream, final int skipped) throws IOException {
+        final int count = buffer.getShort() & 0xffff;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream kept = new DataOutputStream(bytes);
+        int written = 0;
+        for (int i = 0; i < count; ++i) {
+            final int name = buffer.getShort() & 0xffff;
+            final int length = buffer.getInt();
+            if (name == skipped) {
+                buffer.position(buffer.position() + length);
+            } else {
+                kept.writeShort(name);
+                kept.writeInt(length);
+                copy(buffer, kept, length);
+                ++written;
+            }
+        }
+        ostream.writeShort(written);
+        ostream.write(bytes.toByteArray());
+    }
+
+    // Method bodies are of no use to compile against a type, and make for most of a class file
+    static byte[] strip(final byte[] data) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+            final DataOutputStream ostream = new DataOutputStream(bytes);
+
+            // magic, minor_version, major_version
+            copy(buffer, ostream, 8);
+
+            // Going through the constant pool, only to find out where "Code" is
+            final int count = buffer.getShort() & 0xffff;
+            ostream.writeShort(count);
+            int code = CODE_ABSENT;
+            for (int i = 1; i < count; ++i) {
+                final int tag = buffer.get() & 0xff;
+                ostream.writeByte(tag);
+                switch (tag) {
+                    case 1:
+                        final int length = buffer.getShort() & 0xffff;
+                        final byte[] utf8 = new byte[length];
+                        buffer.get(utf8);
+                        ostream.writeShort(length);
+                        ostream.write(utf8);
+                        if ((length == 4) && (utf8[0] == 'C') && (utf8[1] == 'o') && (utf8[2] == 'd') && (utf8[3] == 'e')) {
+                            code = i;
+                        }
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        copy(buffer, ostream, 2);
+                        break;
+                    case 15:
+                        copy(buffer, ostream, 3);
+                        break;
+                    case 3:
+                    case 4:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 17:
+                    case 18:
+                        copy(buffer, ostream, 4);
+                        break;
+                    case 5:
+                    case 6:
+                        copy(buffer, ostream, 8);
+                        ++i;
+                        break;
+                    default:
+                        return data;
+                }
+            }
+
+            // access_flags, this_class, super_class, then the interfaces
+            copy(buffer, ostream, 6);
+            final int interfaces = buffer.getShort() & 0xffff;
+            ostream.writeShort(interfaces);
+            copy(buffer, ostream, 2 * interfaces);
+
+            copyMembers(buffer, ostream, code, false);
+            copyMembers(buffer, ostream, code, true);
+            copyAttributes(buffer, ostream, CODE_ABSENT);
+            if (buffer.hasRemaining()) {
+                return data;
+            }
+            ostream.flush();
+            return bytes.toByteArray();
+        }
+        catch (final IOException | BufferUnderflowException | IllegalArgumentException e) {
+
+            // Anything unexpected is simply kept as is
+            return data;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import spoon.reflect.factory.Factory;
+import spoon.support.SerializationModelStreamer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+class ModelCache {
+
+    private static final int MAX_MODELS = Integer.getInteger(SpoonApiFactory.MODEL_CACHE_SIZE_KEY, 16);
+
+    // Built models, serialized so that every user gets a copy of its own, the least recently used going first
+    private static final Map<List<Object>, CompletableFuture<byte[]>> MODELS =
+            new LinkedHashMap<List<Object>, CompletableFuture<byte[]>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<Object>, CompletableFuture<byte[]>> eldest) {
+                    return size() > MAX_MODELS;
+                }
+            };
+
+    private ModelCache() {}
+
+    static Factory get(final List<Object> key, final Supplier<Factory> builder) {
+
+        // Concurrent callers with the same key wait for a single build, other keys being built alongside
+        final CompletableFuture<byte[]> created = new CompletableFuture<>();
+        final CompletableFuture<byte[]> existing;
+        synchronized (MODELS) {
+            existing = MODELS.putIfAbsent(key, created);
+        }
+        if (existing == null) {
+            try {
+                final ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+                new SerializationModelStreamer().save(builder.get(), ostream);
+                created.complete(ostream.toByteArray());
+            }
+            catch (final RuntimeException | Error e) {
+
+                // Not remembering failures, the next caller trying again
+                synchronized (MODELS) {
+                    MODELS.remove(key, created);
+                }
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        final byte[] data;
+        try {
+            data = ((existing == null) ? created : existing).join();
+        }
+        catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+        return new SerializationModelStreamer().load(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import spoon.Launcher;
+import spoon.SpoonModelBuilder;
+import spoon.reflect.CtModel;
+import spoon.reflect.factory.Factory;
+
+class ModelLauncher extends Launcher {
+    private static final ThreadLocal<Factory> PENDING = new ThreadLocal<>();
+
+    // Whether the factory already holds the whole model, in which case there's nothing left to build
+    private final boolean built;
+
+    // Whether plain jars of the classpath come from the index shared by the whole build
+    private volatile boolean sharedClasspath;
+
+    // Where the stubs of the classpath JARs are kept between builds, null to decode the JARs themselves
+    private volatile StubCache stubCache;
+
+    // How many JDT compilers share the parsing of the input sources, one meaning the usual sequential build
+    private volatile int parseThreads = 1;
+
+    // How many shards the input sources ended up parsed in, zero for the usual sequential build
+    private volatile int parseShards;
+
+    static ModelLauncher create(final Factory factory, final boolean built) {
+
+        // The factory is created from within Launcher's constructor, hence the hand-over
+        PENDING.set(factory);
+        try {
+            return new ModelLauncher(built);
+        }
+        finally {
+            PENDING.remove();
+        }
+    }
+
+    private ModelLauncher(final boolean built) {
+        this.built = built;
+    }
+
+    void setSharedClasspath(final boolean sharedClasspath) {
+        this.sharedClasspath = sharedClasspath;
+    }
+
+    boolean isSharedClasspath() {
+        return sharedClasspath;
+    }
+
+    void setStubCache(final StubCache stubCache) {
+        this.stubCache = stubCache;
+    }
+
+    StubCache getStubCache() {
+        return stubCache;
+    }
+
+    void setParseThreads(final int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    int getParseThreads() {
+        return parseThreads;
+    }
+
+    void setParseShards(final int parseShards) {
+        this.parseShards = parseShards;
+    }
+
+    int getParseShards() {
+        return parseShards;
+    }
+
+    @Override
+    protected SpoonModelBuilder getCompilerInstance(final Factory factory) {
+        return new SharingCompiler(factory, this);
+    }
+
+    @Override
+    public CtModel buildModel() {
+        if (built) {
+            return getModel();
+        } else {
+            return super.buildModel();
+        }
+    }
+
+    @Override
+    public Factory createFactory() {
+        final Factory factory = PENDING.get();
+        if (factory == null) {
+            return super.createFactory();
+        } else {
+            return factory;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SharedClasspath {
+
+    // Identical classpath entries, as in same path, size and modification time, share their index
+    private static final Map<List<Object>, SharedJar> JARS = new ConcurrentHashMap<>();
+
+    private SharedClasspath() {}
+
+    static SharedJar get(final File file, final StubCache stubCache) throws IOException {
+        final List<Object> key = Arrays.asList(file.getAbsolutePath(), file.length(), file.lastModified());
+        try {
+            return JARS.computeIfAbsent(key, k -> {
+                try {
+                    return SharedJar.open(file, stubCache);
+                }
+                catch (final IOException e) {
+                    throw new SharedJar.OpenException(e);
+                }
+            });
+        }
+        catch (final SharedJar.OpenException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static int size() {
+        return JARS.size();
+    }
+
+    public static void clear() {
+
+        // Meant for the end of the build, once nothing is compiling anymore
+        for (final SharedJar jar : JARS.values()) {
+            jar.close();
+        }
+        JARS.clear();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+import java.io.File;
+import java.io.IOException;
+
+class SharedClasspathJar extends ClasspathJar {
+    private final SharedJar shared;
+
+    SharedClasspathJar(final File file, final SharedJar shared) {
+        super(file, true, null, null);
+        this.shared = shared;
+        packageCache = shared.getPackages();
+    }
+
+    @Override
+    public void initialize() {
+
+        // Nothing to open, the jar only gets opened for the rare lookups the index can't answer
+    }
+
+    private void ensureOpen() {
+        if (zipFile == null) {
+            try {
+                super.initialize();
+            }
+            catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public NameEnvironmentAnswer findClass(
+            final char[] typeName,
+            final String qualifiedPackageName,
+            final String moduleName,
+            final String qualifiedBinaryFileName,
+            final boolean asBinaryOnly
+    ) {
+        if (!isPackage(qualifiedPackageName, moduleName)) {
+            return null;
+        }
+        final ClassFileReader reader = shared.getType(qualifiedBinaryFileName);
+        if (reader == null) {
+            return null;
+        }
+        return new NameEnvironmentAnswer(reader, fetchAccessRestriction(qualifiedBinaryFileName));
+    }
+
+    @Override
+    public boolean hasCompilationUnit(final String qualifiedPackageName, final String moduleName) {
+        return shared.hasTypes(qualifiedPackageName);
+    }
+
+    @Override
+    public char[][][] findTypeNames(final String qualifiedPackageName, final String moduleName) {
+        ensureOpen();
+        return super.findTypeNames(qualifiedPackageName, moduleName);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        packageCache = shared.getPackages();
+    }
+}
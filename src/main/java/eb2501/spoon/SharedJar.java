@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+class SharedJar {
+    static class OpenException extends RuntimeException {
+        OpenException(final IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException)super.getCause();
+        }
+    }
+
+    // Where the class files come from, either the JAR itself or its stubs
+    interface Source {
+        Set<String> getPackages();
+
+        Set<String> getTypePackages();
+
+        byte[] read(String qualifiedBinaryFileName) throws IOException;
+
+        void close();
+    }
+
+    private static class ZipSource implements Source {
+        private final ZipFile zipFile;
+        private final Set<String> packages;
+        private final Set<String> typePackages;
+
+        ZipSource(final File file) throws IOException {
+            zipFile = new ZipFile(file);
+            final Set<String> packages = new HashSet<>();
+            final Set<String> typePackages = new HashSet<>();
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                addPackages(entries.nextElement().getName(), packages, typePackages);
+            }
+            this.packages = Collections.unmodifiableSet(packages);
+            this.typePackages = Collections.unmodifiableSet(typePackages);
+        }
+
+        @Override
+        public Set<String> getPackages() {
+            return packages;
+        }
+
+        @Override
+        public Set<String> getTypePackages() {
+            return typePackages;
+        }
+
+        @Override
+        public byte[] read(final String qualifiedBinaryFileName) throws IOException {
+            final ZipEntry entry = zipFile.getEntry(qualifiedBinaryFileName);
+            if (entry == null) {
+                return null;
+            }
+            try (final InputStream istream = zipFile.getInputStream(entry)) {
+                return IOUtils.toByteArray(istream);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                zipFile.close();
+            }
+            catch (final IOException e) {
+                // Nothing left to do about it
+            }
+        }
+    }
+
+    private final Source source;
+
+    // Decoded class files, fully initialized so that they're only ever read afterwards
+    private final Map<String, Optional<ClassFileReader>> types;
+
+    SharedJar(final Source source) {
+        this.source = source;
+        types = new ConcurrentHashMap<>();
+    }
+
+    static SharedJar open(final File file, final StubCache stubCache) throws IOException {
+        if (stubCache != null) {
+            final Source stubs = stubCache.get(file);
+            if (stubs != null) {
+                return new SharedJar(stubs);
+            }
+        }
+        return new SharedJar(new ZipSource(file));
+    }
+
+    // Every package of the JAR, parents included, the way JDT's own ClasspathJar lists them
+    static void addPackages(final String name, final Set<String> packages, final Set<String> typePackages) {
+        packages.add("");
+        int last = name.lastIndexOf('/');
+        if ((last > 0) && name.endsWith(".class")) {
+            typePackages.add(name.substring(0, last));
+        }
+        while (last > 0) {
+            if (!packages.add(name.substring(0, last))) {
+                break;
+            }
+            last = name.lastIndexOf('/', last - 1);
+        }
+    }
+
+    Set<String> getPackages() {
+        return source.getPackages();
+    }
+
+    boolean hasTypes(final String qualifiedPackageName) {
+        return source.getTypePackages().contains(qualifiedPackageName);
+    }
+
+    ClassFileReader getType(final String qualifiedBinaryFileName) {
+        return types.computeIfAbsent(qualifiedBinaryFileName, n -> {
+            try {
+                final byte[] data = source.read(n);
+                if (data == null) {
+                    return Optional.empty();
+                }
+                return Optional.of(new ClassFileReader(data, n.toCharArray(), true));
+            }
+            catch (final ClassFormatException | IOException e) {
+
+                // Just as JDT does, a type that can't be read doesn't exist
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    void close() {
+        source.close();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import spoon.compiler.SpoonFile;
+import spoon.reflect.factory.Factory;
+import spoon.support.compiler.FileSystemFile;
+import spoon.support.compiler.VirtualFolder;
+import spoon.support.compiler.jdt.JDTBasedSpoonCompiler;
+import spoon.support.compiler.jdt.JDTBatchCompiler;
+import spoon.support.compiler.jdt.JDTBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class SharingCompiler extends JDTBasedSpoonCompiler {
+
+    // Only configured once the builder is done, the compiler itself being created much earlier
+    private final ModelLauncher launcher;
+
+    SharingCompiler(final Factory factory, final ModelLauncher launcher) {
+        super(factory);
+        this.launcher = launcher;
+    }
+
+    private static class PrefetchedFile extends FileSystemFile {
+        private final byte[] content;
+
+        PrefetchedFile(final SourceShards.Source source) {
+            super(source.file);
+            content = source.content;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return new ByteArrayInputStream(content);
+        }
+    }
+
+    private SharedJar open(final File file) throws IOException {
+        if (launcher.isSharedClasspath()) {
+            return SharedClasspath.get(file, launcher.getStubCache());
+        }
+
+        // Unshared, only the stubs are worth it, the JAR itself being better left to JDT
+        final SharedJar.Source stubs = launcher.getStubCache().get(file);
+        return (stubs == null) ? null : new SharedJar(stubs);
+    }
+
+    @Override
+    protected JDTBatchCompiler createBatchCompiler(final InputType... types) {
+        if (!launcher.isSharedClasspath() && (launcher.getStubCache() == null)) {
+            return super.createBatchCompiler(types);
+        }
+        return new JDTBatchCompiler(this) {
+            @Override
+            public FileSystem getLibraryAccess() {
+
+                // Plain jars get served from their index, anything else (jrt, jmods, folders) stays with JDT
+                for (int i = 0; i < checkedClasspaths.length; ++i) {
+                    final FileSystem.Classpath classpath = checkedClasspaths[i];
+                    if (classpath.getClass() == ClasspathJar.class) {
+                        final File file = new File(classpath.getPath());
+                        try {
+                            final SharedJar shared = open(file);
+                            if (shared != null) {
+                                checkedClasspaths[i] = new SharedClasspathJar(file, shared);
+                            }
+                        }
+                        catch (final IOException e) {
+
+                            // Left to JDT, which quietly ignores what it can't open
+                        }
+                    }
+                }
+                return super.getLibraryAccess();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void reportProblem(final CategorizedProblem problem) {
+
+        // Shards report their problems concurrently
+        super.reportProblem(problem);
+    }
+
+    @Override
+    protected boolean buildSources(final JDTBuilder jdtBuilder) {
+        final int threads = launcher.getParseThreads();
+        if ((threads <= 1) || (jdtBuilder != null)) {
+            return super.buildSources(jdtBuilder);
+        }
+        final List<File> files = new ArrayList<>();
+        for (final SpoonFile file : sources.getAllJavaFiles()) {
+            if (file.toFile() == null) {
+                return super.buildSources(jdtBuilder);
+            }
+            files.add(file.toFile());
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<List<SourceShards.Source>> shards = SourceShards.partition(
+                    SourceShards.prefetch(files, getEnvironment().getEncoding(), executor),
+                    threads
+            );
+            getEnvironment().debugMessage(String.format("Parsing %d sources in %d shards", files.size(), shards.size()));
+            launcher.setParseShards(shards.size());
+
+            // Each shard being closed over the types it uses, its own JDT compiler resolves it just as the whole would
+            final List<CompletableFuture<CompilationUnitDeclaration[]>> futures = new ArrayList<>();
+            for (final List<SourceShards.Source> shard : shards) {
+                final VirtualFolder folder = new VirtualFolder();
+                for (final SourceShards.Source source : shard) {
+                    folder.addFile(new PrefetchedFile(source));
+                }
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> buildUnits(null, folder, getSourceClasspath(), ""),
+                        executor
+                ));
+            }
+            final List<CompilationUnitDeclaration> units = new ArrayList<>();
+            for (final CompletableFuture<CompilationUnitDeclaration[]> future : futures) {
+                units.addAll(Arrays.asList(future.join()));
+            }
+
+            // A single conversion, which sorts the units, makes for the very same model as a sequential build
+            buildModel(units.toArray(new CompilationUnitDeclaration[0]));
+            return getProblems().isEmpty();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class SourceShards {
+    private static final Pattern IDENTIFIER = Pattern.compile("\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*");
+    private static final Pattern DECLARATION = Pattern.compile(
+            "\\b(?:class|interface|enum)\\s+(\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*)"
+    );
+
+    static class Source {
+        final File file;
+        final byte[] content;
+
+        // Simple names of the types the file may declare, nested ones included
+        final Set<String> declared;
+
+        // Every identifier of the file, whether it ends up naming a type or not
+        final Set<String> identifiers;
+
+        Source(final File file, final byte[] content, final Charset encoding) {
+            this.file = file;
+            this.content = content;
+            final String text = new String(content, encoding);
+            declared = new HashSet<>();
+            final Matcher declaration = DECLARATION.matcher(text);
+            while (declaration.find()) {
+                declared.add(declaration.group(1));
+            }
+            identifiers = new HashSet<>();
+            final Matcher identifier = IDENTIFIER.matcher(text);
+            while (identifier.find()) {
+                identifiers.add(identifier.group());
+            }
+        }
+    }
+
+    private SourceShards() {}
+
+    static List<Source> prefetch(final List<File> files, final Charset encoding, final ExecutorService executor) {
+
+        // Reading and decoding overlap, results coming back in the order of the files
+        final List<CompletableFuture<Source>> futures = new ArrayList<>();
+        for (final File file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new Source(file, Files.readAllBytes(file.toPath()), encoding);
+                }
+                catch (final IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        final List<Source> result = new ArrayList<>();
+        for (final CompletableFuture<Source> future : futures) {
+            result.add(future.join());
+        }
+        return result;
+    }
+
+    private static int find(final int[] parents, final int index) {
+        int root = index;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        int current = index;
+        while (parents[current] != root) {
+            final int next = parents[current];
+            parents[current] = root;
+            current = next;
+        }
+        return root;
+    }
+
+    static List<List<Source>> partition(final List<Source> sources, final int count) {
+
+        // Files possibly naming a type declared by another file end up together, so that each shard
+        // resolves on its own exactly as it would within the whole, this being an over-approximation
+        final Map<String, List<Integer>> declarers = new HashMap<>();
+        for (int i = 0; i < sources.size(); ++i) {
+            for (final String name : sources.get(i).declared) {
+                declarers.computeIfAbsent(name, n -> new ArrayList<>()).add(i);
+            }
+        }
+        final int[] parents = new int[sources.size()];
+        for (int i = 0; i < parents.length; ++i) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < sources.size(); ++i) {
+            for (final String identifier : sources.get(i).identifiers) {
+                final List<Integer> targets = declarers.get(identifier);
+                if (targets != null) {
+                    for (final int target : targets) {
+                        parents[find(parents, i)] = find(parents, target);
+                    }
+                }
+            }
+        }
+        final Map<Integer, List<Source>> components = new TreeMap<>();
+        for (int i = 0; i < sources.size(); ++i) {
+            components.computeIfAbsent(find(parents, i), r -> new ArrayList<>()).add(sources.get(i));
+        }
+
+        // Largest components first, each going to the lightest shard so far
+        final List<List<Source>> sorted = new ArrayList<>(components.values());
+        sorted.sort(Comparator.comparingLong(SourceShards::getSize).reversed());
+        final List<List<Source>> result = new ArrayList<>();
+        final long[] sizes = new long[Math.min(count, sorted.size())];
+        for (int i = 0; i < sizes.length; ++i) {
+            result.add(new ArrayList<>());
+        }
+        for (final List<Source> component : sorted) {
+            int lightest = 0;
+            for (int i = 1; i < sizes.length; ++i) {
+                if (sizes[i] < sizes[lightest]) {
+                    lightest = i;
+                }
+            }
+            result.get(lightest).addAll(component);
+            sizes[lightest] += getSize(component);
+        }
+        return result;
+    }
+
+    private static long getSize(final List<Source> component) {
+        long result = 0;
+        for (final Source source : component) {
+            result += source.content.length;
+        }
+        return result;
+    }
+}
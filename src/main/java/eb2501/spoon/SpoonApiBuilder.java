@@ -18,30 +18,47 @@ package eb2501.spoon;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import spoon.Launcher;
 import spoon.OutputType;
 import spoon.SpoonAPI;
 import spoon.compiler.Environment;
 import spoon.processing.Processor;
+import spoon.reflect.factory.Factory;
 
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class SpoonApiBuilder {
     private static final Logger LOGGER = LoggerFactory.getLogger(SpoonApiFactory.class);
 
-    private Launcher launcher;
+    private ModelLauncher launcher;
     private final List<File> inputSources;
     private final List<File> templateSources;
     private final List<String> processorNames;
     private final List<Processor<?>> processorInstances;
 
+    // A model built beforehand, only used as long as nothing it depends on gets changed
+    private Supplier<Factory> prebuilt;
+    private boolean modelChanged;
+
     public SpoonApiBuilder() {
-        launcher = new Launcher();
+        this(ModelLauncher.create(null, false));
+    }
+
+    public SpoonApiBuilder(final Factory model) {
+        this(ModelLauncher.create(model, false));
+    }
+
+    SpoonApiBuilder(final Factory model, final boolean built) {
+        this(ModelLauncher.create(model, built));
+    }
+
+    private SpoonApiBuilder(final ModelLauncher launcher) {
+        this.launcher = launcher;
         launcher.getEnvironment().setOutputType(OutputType.NO_OUTPUT);
         inputSources = new ArrayList<>();
         templateSources = new ArrayList<>();
@@ -49,8 +66,40 @@ public class SpoonApiBuilder {
         processorInstances = new ArrayList<>();
     }
 
+    private static void copyEnvironment(final Environment from, final Environment to) {
+        to.setLevel(from.getLevel().toString());
+        to.setComplianceLevel(from.getComplianceLevel());
+        to.setAutoImports(from.isAutoImports());
+        to.setPreserveLineNumbers(from.isPreserveLineNumbers());
+        to.useTabulations(from.isUsingTabulations());
+        to.setTabulationSize(from.getTabulationSize());
+        to.setCommentEnabled(from.isCommentsEnabled());
+        to.setSelfChecks(from.checksAreSkipped());
+        to.setEncoding(from.getEncoding());
+        to.setNoClasspath(from.getNoClasspath());
+        if (from.getSourceClasspath() != null) {
+            to.setSourceClasspath(from.getSourceClasspath());
+        }
+        to.setOutputType(from.getOutputType());
+        if (from.getOutputType() != OutputType.NO_OUTPUT) {
+            to.setSourceOutputDirectory(from.getSourceOutputDirectory());
+        }
+    }
+
+    // How many shards the model of the given API got parsed in, zero when it wasn't parsed in parallel
+    public static int getParseShards(final SpoonAPI spoon) {
+        return (spoon instanceof ModelLauncher) ? ((ModelLauncher)spoon).getParseShards() : 0;
+    }
+
     public SpoonAPI build() {
 
+        // Swap in the prebuilt model, keeping whatever has been configured so far
+        if ((prebuilt != null) && !modelChanged) {
+            final ModelLauncher built = ModelLauncher.create(prebuilt.get(), true);
+            copyEnvironment(launcher.getEnvironment(), built.getEnvironment());
+            launcher = built;
+        }
+
         // Doing the lazy initialization
         inputSources.forEach(i -> {
             if (i.exists()) {
@@ -77,6 +126,7 @@ public class SpoonApiBuilder {
         LOGGER.debug("  preserveComments    = {}", env.isCommentsEnabled());
         LOGGER.debug("  skipSelfChecks      = {}", env.checksAreSkipped());
         LOGGER.debug("  encoding            = {}", env.getEncoding());
+        LOGGER.debug("  noClasspath         = {}", env.getNoClasspath());
         LOGGER.debug("  inputSources:");
         for (final File file : inputSources) {
             LOGGER.debug("   - {}", file);
@@ -111,6 +161,13 @@ public class SpoonApiBuilder {
         }
     }
 
+    SpoonApiBuilder withPrebuiltModel(final Supplier<Factory> model) {
+        check();
+        prebuilt = model;
+        modelChanged = false;
+        return this;
+    }
+
     public SpoonApiBuilder withLoggingLevel(final String level) {
         check();
         if (!level.isEmpty()) {
@@ -121,6 +178,7 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withComplianceLevel(final int level) {
         check();
+        modelChanged = true;
         launcher.getEnvironment().setComplianceLevel(level);
         return this;
     }
@@ -150,6 +208,7 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withPreserveComments(final boolean preserveComments) {
         check();
+        modelChanged = true;
         launcher.getEnvironment().setCommentEnabled(preserveComments);
         return this;
     }
@@ -162,12 +221,39 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withEncoding(final Charset encoding) {
         check();
+        modelChanged = true;
         launcher.getEnvironment().setEncoding(encoding);
         return this;
     }
 
+    public SpoonApiBuilder withNoClasspath(final boolean noClasspath) {
+        check();
+        modelChanged = true;
+        launcher.getEnvironment().setNoClasspath(noClasspath);
+        return this;
+    }
+
+    public SpoonApiBuilder withSharedClasspath(final boolean sharedClasspath) {
+        check();
+        launcher.setSharedClasspath(sharedClasspath);
+        return this;
+    }
+
+    public SpoonApiBuilder withStubCache(final StubCache stubCache) {
+        check();
+        launcher.setStubCache(stubCache);
+        return this;
+    }
+
+    public SpoonApiBuilder withParseThreads(final int parseThreads) {
+        check();
+        launcher.setParseThreads(parseThreads);
+        return this;
+    }
+
     public SpoonApiBuilder withInputSource(final File inputSource) {
         check();
+        modelChanged = true;
         inputSources.clear();
         inputSources.add(inputSource);
         return this;
@@ -175,6 +261,7 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withInputSources(final List<File> inputSources) {
         check();
+        modelChanged = true;
         this.inputSources.clear();
         this.inputSources.addAll(inputSources);
         return this;
@@ -197,6 +284,7 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withTemplateSource(final File templateSource) {
         check();
+        modelChanged = true;
         templateSources.clear();
         templateSources.add(templateSource);
         return this;
@@ -204,6 +292,7 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withTemplateSources(final List<File> templateSources) {
         check();
+        modelChanged = true;
         this.templateSources.clear();
         this.templateSources.addAll(templateSources);
         return this;
@@ -251,6 +340,7 @@ public class SpoonApiBuilder {
 
     public SpoonApiBuilder withSourceClasspath(final List<File> classpath) {
         check();
+        modelChanged = true;
         launcher.getModelBuilder().setSourceClasspath(
                 classpath
                         .stream()
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import spoon.reflect.factory.Factory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.function.Supplier;
+
+public class SpoonApiConfiguration {
+    private static final String[] KEYS = {
+            SpoonApiFactory.INPUT_SOURCES_KEY,
+            SpoonApiFactory.TEMPLATE_SOURCES_KEY,
+            SpoonApiFactory.OUTPUT_DIRECTORY_KEY,
+            SpoonApiFactory.LOGGING_LEVEL_KEY,
+            SpoonApiFactory.COMPLIANCE_LEVEL_KEY,
+            SpoonApiFactory.AUTO_IMPORTS_KEY,
+            SpoonApiFactory.PRESERVE_LINE_NUMBERS_KEY,
+            SpoonApiFactory.TABULATION_SIZE_KEY,
+            SpoonApiFactory.PRESERVE_COMMENTS_KEY,
+            SpoonApiFactory.SKIP_SELF_CHECKS_KEY,
+            SpoonApiFactory.ENCODING_KEY,
+            SpoonApiFactory.SOURCE_CLASSPATH_KEY,
+            SpoonApiFactory.MODEL_FILE_KEY
+    };
+
+    // Built on first use, then shared by every thread of the JVM
+    private static class DefaultHolder {
+        static final SpoonApiConfiguration INSTANCE = new SpoonApiConfiguration(loadDefaultProperties());
+    }
+
+    private final Map<String, String> properties;
+    private final List<File> inputSources;
+    private final List<File> templateSources;
+    private final File outputDirectory;
+    private final String loggingLevel;
+    private final Integer complianceLevel;
+    private final Boolean autoImports;
+    private final Boolean preserveLineNumbers;
+    private final Integer tabulationSize;
+    private final Boolean preserveComments;
+    private final Boolean skipSelfChecks;
+    private final Charset encoding;
+    private final List<File> sourceClasspath;
+
+    // The model the compile task built, as long as it still matches the inputs
+    private final Supplier<Factory> model;
+
+    private SpoonApiConfiguration(final Map<String, String> properties) {
+        this.properties = Collections.unmodifiableMap(new HashMap<>(properties));
+        inputSources = getFiles(SpoonApiFactory.INPUT_SOURCES_KEY);
+        templateSources = getFiles(SpoonApiFactory.TEMPLATE_SOURCES_KEY);
+        final String outputDirectory = properties.get(SpoonApiFactory.OUTPUT_DIRECTORY_KEY);
+        this.outputDirectory = (outputDirectory == null) ? null : new File(outputDirectory);
+        loggingLevel = properties.get(SpoonApiFactory.LOGGING_LEVEL_KEY);
+        final String complianceLevel = properties.get(SpoonApiFactory.COMPLIANCE_LEVEL_KEY);
+        this.complianceLevel = (complianceLevel == null) ? null : Integer.parseInt(complianceLevel);
+        autoImports = getBoolean(SpoonApiFactory.AUTO_IMPORTS_KEY);
+        preserveLineNumbers = getBoolean(SpoonApiFactory.PRESERVE_LINE_NUMBERS_KEY);
+        final String tabulationSize = properties.get(SpoonApiFactory.TABULATION_SIZE_KEY);
+        this.tabulationSize = (tabulationSize == null) ? null : Integer.parseInt(tabulationSize);
+        preserveComments = getBoolean(SpoonApiFactory.PRESERVE_COMMENTS_KEY);
+        skipSelfChecks = getBoolean(SpoonApiFactory.SKIP_SELF_CHECKS_KEY);
+        final String encoding = properties.get(SpoonApiFactory.ENCODING_KEY);
+        this.encoding = (encoding == null) ? null : Charset.forName(encoding);
+        sourceClasspath = getFiles(SpoonApiFactory.SOURCE_CLASSPATH_KEY);
+        model = openModel();
+    }
+
+    private static Map<String, String> loadDefaultProperties() {
+
+        // Written by the compile task, standing in for the individual system properties
+        final Map<String, String> result = new HashMap<>();
+        final String manifest = System.getProperty(SpoonApiFactory.MANIFEST_KEY);
+        if (manifest != null) {
+            try {
+                result.putAll(TestModel.readManifest(new File(manifest)));
+            }
+            catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // An explicit system property still wins over the manifest
+        for (final String key : KEYS) {
+            final String value = System.getProperty(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    public static SpoonApiConfiguration getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public static SpoonApiConfiguration of(final Map<String, String> properties) {
+        return new SpoonApiConfiguration(properties);
+    }
+
+    private Boolean getBoolean(final String key) {
+        final String value = properties.get(key);
+        return (value == null) ? null : Boolean.parseBoolean(value);
+    }
+
+    private List<File> getFiles(final String key) {
+        final String value = properties.get(key);
+        if (value == null) {
+            return null;
+        } else if (value.isEmpty()) {
+            return Collections.emptyList();
+        } else {
+            return Collections.unmodifiableList(SpoonApiFactory.parseFiles(value));
+        }
+    }
+
+    private Supplier<Factory> openModel() {
+        final String modelFile = properties.get(SpoonApiFactory.MODEL_FILE_KEY);
+        if (modelFile == null) {
+            return null;
+        }
+        final List<File> sources = new ArrayList<>();
+        if (inputSources != null) {
+            sources.addAll(inputSources);
+        }
+        if (templateSources != null) {
+            sources.addAll(templateSources);
+        }
+        return TestModel.open(new File(modelFile), TestModel.getSettings(properties::get), sources);
+    }
+
+    public String getProperty(final String key) {
+        return properties.get(key);
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    SpoonApiBuilder configure(final SpoonApiBuilder builder) {
+        if (inputSources != null) {
+            builder.withInputSources(inputSources);
+        }
+        if (templateSources != null) {
+            builder.withTemplateSources(templateSources);
+        }
+        if (outputDirectory != null) {
+            builder.withOutputDirectory(outputDirectory);
+        }
+        if (loggingLevel != null) {
+            builder.withLoggingLevel(loggingLevel);
+        }
+        if (complianceLevel != null) {
+            builder.withComplianceLevel(complianceLevel);
+        }
+        if (autoImports != null) {
+            builder.withAutoImports(autoImports);
+        }
+        if (preserveLineNumbers != null) {
+            builder.withPreserveLineNumbers(preserveLineNumbers);
+        }
+        if (tabulationSize != null) {
+            builder.withTabulationSize(tabulationSize);
+        }
+        if (preserveComments != null) {
+            builder.withPreserveComments(preserveComments);
+        }
+        if (skipSelfChecks != null) {
+            builder.withSkipSelfChecks(skipSelfChecks);
+        }
+        if (encoding != null) {
+            builder.withEncoding(encoding);
+        }
+        if (sourceClasspath != null) {
+            builder.withSourceClasspath(sourceClasspath);
+        }
+        return builder;
+    }
+
+    public SpoonApiBuilder newBuilder() {
+        final SpoonApiBuilder result = configure(new SpoonApiBuilder());
+        if (model != null) {
+            result.withPrebuiltModel(model);
+        }
+        return result;
+    }
+}
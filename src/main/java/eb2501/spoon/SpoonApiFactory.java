@@ -19,11 +19,12 @@ package eb2501.spoon;
 import org.apache.commons.lang3.StringUtils;
 import spoon.SpoonAPI;
 import spoon.processing.Processor;
+import spoon.reflect.factory.Factory;
 
 import java.io.File;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -44,6 +45,9 @@ public class SpoonApiFactory {
     public static final String SKIP_SELF_CHECKS_KEY      = PREFIX + "skipSelfChecks";
     public static final String ENCODING_KEY              = PREFIX + "encoding";
     public static final String SOURCE_CLASSPATH_KEY      = PREFIX + "sourceClasspath";
+    public static final String MANIFEST_KEY              = PREFIX + "manifest";
+    public static final String MODEL_FILE_KEY            = PREFIX + "modelFile";
+    public static final String MODEL_CACHE_SIZE_KEY      = PREFIX + "modelCacheSize";
 
     public static List<File> parseFiles(final String text) {
         return Arrays.stream(text.split("[" + File.pathSeparator + "]"))
@@ -58,87 +62,83 @@ public class SpoonApiFactory {
         );
     }
 
-    public static SpoonApiBuilder createDefaultBuilder() {
-        final SpoonApiBuilder builder = new SpoonApiBuilder();
-
-        final String inputSources = System.getProperty(INPUT_SOURCES_KEY);
-        if (inputSources != null) {
-            builder.withInputSources(parseFiles(inputSources));
-        }
-
-        final String templateSources = System.getProperty(TEMPLATE_SOURCES_KEY);
-        if (templateSources != null) {
-            builder.withTemplateSources(parseFiles(templateSources));
-        }
-
-        final String genDir = System.getProperty(OUTPUT_DIRECTORY_KEY);
-        if (genDir != null) {
-            builder.withOutputDirectory(new File(genDir));
-        }
-
-        final String loggingLevel = System.getProperty(LOGGING_LEVEL_KEY);
-        if (loggingLevel != null) {
-            builder.withLoggingLevel(loggingLevel);
-        }
-
-        final String complianceLevel = System.getProperty(COMPLIANCE_LEVEL_KEY);
-        if (complianceLevel != null) {
-            builder.withComplianceLevel(Integer.parseInt(complianceLevel));
-        }
-
-        final String autoImports = System.getProperty(AUTO_IMPORTS_KEY);
-        if (autoImports != null) {
-            builder.withAutoImports(Boolean.parseBoolean(autoImports));
-        }
-
-        final String preserveLineNumbers = System.getProperty(PRESERVE_LINE_NUMBERS_KEY);
-        if (preserveLineNumbers != null) {
-            builder.withPreserveLineNumbers(Boolean.parseBoolean(preserveLineNumbers));
-        }
-
-        final String tabulationSize = System.getProperty(TABULATION_SIZE_KEY);
-        if (tabulationSize != null) {
-            builder.withTabulationSize(Integer.parseInt(tabulationSize));
-        }
-
-        final String preserveComments = System.getProperty(PRESERVE_COMMENTS_KEY);
-        if (preserveComments != null) {
-            builder.withPreserveComments(Boolean.parseBoolean(preserveComments));
-        }
-
-        final String skipSelfChecks = System.getProperty(SKIP_SELF_CHECKS_KEY);
-        if (skipSelfChecks != null) {
-            builder.withSkipSelfChecks(Boolean.parseBoolean(skipSelfChecks));
-        }
+    public static SpoonApiConfiguration getConfiguration() {
+        return SpoonApiConfiguration.getDefault();
+    }
 
-        final String encoding = System.getProperty(ENCODING_KEY);
-        if (encoding != null) {
-            builder.withEncoding(Charset.forName(encoding));
-        }
+    public static SpoonApiBuilder createDefaultBuilder() {
+        return getConfiguration().newBuilder();
+    }
 
-        final String sourceClasspath = System.getProperty(SOURCE_CLASSPATH_KEY);
-        if (sourceClasspath != null) {
-            System.err.println("DEBUG! " + sourceClasspath);
-            builder.withSourceClasspath(parseFiles(sourceClasspath));
+    private static List<Object> getModelKey(final SpoonApiConfiguration configuration, final File input) {
+
+        // Whatever the parsed model depends on, the output directory and processors aside
+        final List<Object> result = new ArrayList<>();
+        result.add(input.getAbsolutePath());
+        result.add(input.lastModified());
+        result.add(input.length());
+        for (final String key : new String[] {
+                TEMPLATE_SOURCES_KEY,
+                COMPLIANCE_LEVEL_KEY,
+                PRESERVE_COMMENTS_KEY,
+                ENCODING_KEY,
+                SOURCE_CLASSPATH_KEY
+        }) {
+            result.add(configuration.getProperty(key));
         }
-
-        return builder;
+        return result;
     }
 
-    public static SpoonAPI createTest(final URL input, final String processor) {
+    public static SpoonAPI createTest(
+            final SpoonApiConfiguration configuration,
+            final URL input,
+            final String processor
+    ) {
+        final File file;
         try {
-            return createDefaultBuilder()
-                    .withInputSource(new File(input.toURI()))
-                    .withProcessorName(processor)
-                    .withOutputDirectory(null)
-                    .build();
+            file = new File(input.toURI());
         }
         catch (final URISyntaxException e) {
             throw new RuntimeException(e);
         }
+
+        // Parsing only happens once per input, every test then processing its own copy of the model
+        final Factory model = ModelCache.get(getModelKey(configuration, file), () -> {
+            final SpoonAPI spoon = configuration.configure(new SpoonApiBuilder())
+                    .withInputSource(file)
+                    .withOutputDirectory(null)
+                    .build();
+            spoon.buildModel();
+            return spoon.getFactory();
+        });
+        return configuration.configure(new SpoonApiBuilder(model, true))
+                .withInputSource(file)
+                .withProcessorName(processor)
+                .withOutputDirectory(null)
+                .build();
+    }
+
+    public static SpoonAPI createTest(final URL input, final String processor) {
+        return createTest(getConfiguration(), input, processor);
     }
 
     public static <T extends Processor<?>> SpoonAPI createTest(final URL input, final Class<T> processor) {
         return createTest(input, processor.getName());
     }
+
+    public static List<SpoonAPI> createTests(final List<URL> inputs, final String processor) {
+
+        // Distinct inputs get parsed on all cores, the result keeping the order of the inputs
+        final SpoonApiConfiguration configuration = getConfiguration();
+        return inputs.parallelStream()
+                .map(i -> createTest(configuration, i, processor))
+                .collect(Collectors.toList());
+    }
+
+    public static <T extends Processor<?>> List<SpoonAPI> createTests(
+            final List<URL> inputs,
+            final Class<T> processor
+    ) {
+        return createTests(inputs, processor.getName());
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class StubCache {
+    private static final int MAGIC = 0x53505354;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".stubs";
+
+    private static final Map<File, StubCache> INSTANCES = new HashMap<>();
+
+    private final File folder;
+
+    // Whatever the last opening asked for, as it may change from one build to the next
+    private volatile long maxBytes;
+
+    // Same path, size and modification time: we trust the JAR to have the same content
+    private final Map<List<Object>, String> hashes;
+
+    private static class StubSource implements SharedJar.Source {
+        private final ByteBuffer buffer;
+        private final Set<String> packages;
+        private final Set<String> typePackages;
+
+        // Qualified binary file name to offset and length within the mapping
+        private final Map<String, long[]> types;
+
+        StubSource(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                throw new IllegalArgumentException("Not a stub file");
+            }
+            final Set<String> packages = new HashSet<>();
+            final Set<String> typePackages = new HashSet<>();
+            types = new HashMap<>();
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; ++i) {
+                final String name = readString(buffer);
+                final int length = buffer.getInt();
+                SharedJar.addPackages(name, packages, typePackages);
+                types.put(name, new long[] {buffer.position(), length});
+                buffer.position(buffer.position() + length);
+            }
+            this.packages = Collections.unmodifiableSet(packages);
+            this.typePackages = Collections.unmodifiableSet(typePackages);
+        }
+
+        @Override
+        public Set<String> getPackages() {
+            return packages;
+        }
+
+        @Override
+        public Set<String> getTypePackages() {
+            return typePackages;
+        }
+
+        @Override
+        public byte[] read(final String qualifiedBinaryFileName) {
+            final long[] type = types.get(qualifiedBinaryFileName);
+            if (type == null) {
+                return null;
+            }
+            final ByteBuffer view = buffer.duplicate();
+            view.position((int)type[0]);
+            final byte[] result = new byte[(int)type[1]];
+            view.get(result);
+            return result;
+        }
+
+        @Override
+        public void close() {
+
+            // The mapping goes away along with the buffer
+        }
+    }
+
+    private StubCache(final File folder) {
+        this.folder = folder;
+        hashes = new ConcurrentHashMap<>();
+    }
+
+    public static synchronized StubCache open(final File folder, final long maxBytes) {
+
+        // One per folder and JVM, the daemon keeps the content hashes warm
+        final StubCache result = INSTANCES.computeIfAbsent(folder.getAbsoluteFile(), StubCache::new);
+        result.maxBytes = maxBytes;
+        return result;
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] data = new byte[buffer.getShort() & 0xffff];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static String hash(final File jar) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (final InputStream istream = new DigestInputStream(new BufferedInputStream(new FileInputStream(jar)), digest)) {
+            final byte[] buffer = new byte[8192];
+            while (istream.read(buffer) != -1) {
+                // Only there for the digest
+            }
+        }
+        final StringBuilder result = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    private static void write(final File jar, final File file) throws IOException {
+
+        // Entries sorted by name, so that the same content always gives the same stubs
+        final SortedMap<String, byte[]> types = new TreeMap<>();
+        try (final ZipInputStream istream = new ZipInputStream(new BufferedInputStream(new FileInputStream(jar)))) {
+            for (ZipEntry entry = istream.getNextEntry(); entry != null; entry = istream.getNextEntry()) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    types.put(entry.getName(), ClassStubs.strip(IOUtils.toByteArray(istream)));
+                }
+            }
+        }
+
+        // Several daemons may share the folder, so it's replaced atomically
+        file.getParentFile().mkdirs();
+        final File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (final DataOutputStream ostream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                ostream.writeInt(MAGIC);
+                ostream.writeInt(VERSION);
+                ostream.writeInt(types.size());
+                for (final Map.Entry<String, byte[]> entry : types.entrySet()) {
+                    final byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    ostream.writeShort(name.length);
+                    ostream.write(name);
+                    ostream.writeInt(entry.getValue().length);
+                    ostream.write(entry.getValue());
+                }
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    private void evict(final File keep) {
+
+        // Least recently used first, until the whole folder fits again, but for the file about to be mapped
+        final File[] files = folder.listFiles((d, n) -> n.endsWith(EXTENSION) && !n.equals(keep.getName()));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long total = keep.length();
+        for (final File file : files) {
+            total += file.length();
+            if (total > maxBytes) {
+                file.delete();
+            }
+        }
+    }
+
+    SharedJar.Source get(final File jar) {
+        try {
+            final List<Object> key = Arrays.asList(jar.getAbsolutePath(), jar.length(), jar.lastModified());
+            String hash = hashes.get(key);
+            if (hash == null) {
+                hash = hash(jar);
+                hashes.put(key, hash);
+            }
+            final File file = new File(folder, hash + EXTENSION);
+            if (file.exists()) {
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                write(jar, file);
+                evict(file);
+            }
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return new StubSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        catch (final IOException | BufferUnderflowException | IllegalArgumentException e) {
+
+            // Evicted meanwhile, corrupted or whatever else: the JAR itself will do
+            return null;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon;
+
+import spoon.Launcher;
+import spoon.reflect.factory.Factory;
+import spoon.support.SerializationModelStreamer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class TestModel {
+    private static final int MANIFEST_MAGIC = 0x53504d46;
+    private static final int MODEL_MAGIC = 0x53504d44;
+    private static final int VERSION = 1;
+
+    private TestModel() {}
+
+    // The settings a built model depends on, inputs aside
+    public static List<String> getSettings(final Function<String, String> properties) {
+        final List<String> result = new ArrayList<>();
+        for (final String key : new String[] {
+                SpoonApiFactory.COMPLIANCE_LEVEL_KEY,
+                SpoonApiFactory.PRESERVE_COMMENTS_KEY,
+                SpoonApiFactory.ENCODING_KEY,
+                SpoonApiFactory.SOURCE_CLASSPATH_KEY
+        }) {
+            result.add(key + "=" + properties.apply(key));
+        }
+        return result;
+    }
+
+    private static String getSpoonVersion() {
+        return String.valueOf(Launcher.class.getPackage().getImplementationVersion());
+    }
+
+    private static void writeString(final DataOutputStream ostream, final String value) throws IOException {
+        final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        ostream.writeInt(data.length);
+        ostream.write(data);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] data = new byte[buffer.getInt()];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private interface Writer {
+        void write(DataOutputStream ostream) throws IOException;
+    }
+
+    private static void write(final File file, final Writer writer) throws IOException {
+
+        // Test JVMs mapping the file at the same time must never see it half written
+        file.getParentFile().mkdirs();
+        final File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (final DataOutputStream ostream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                writer.write(ostream);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    private static MappedByteBuffer map(final File file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public static void writeManifest(final File file, final Map<String, String> properties) throws IOException {
+        write(file, ostream -> {
+            ostream.writeInt(MANIFEST_MAGIC);
+            ostream.writeInt(VERSION);
+            ostream.writeInt(properties.size());
+            for (final Map.Entry<String, String> entry : new TreeMap<>(properties).entrySet()) {
+                writeString(ostream, entry.getKey());
+                writeString(ostream, entry.getValue());
+            }
+        });
+    }
+
+    public static Map<String, String> readManifest(final File file) throws IOException {
+        final ByteBuffer buffer = map(file);
+        if ((buffer.getInt() != MANIFEST_MAGIC) || (buffer.getInt() != VERSION)) {
+            throw new IOException(String.format("File '%s' isn't a Spoon test manifest", file));
+        }
+        final Map<String, String> result = new HashMap<>();
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; ++i) {
+            final String key = readString(buffer);
+            result.put(key, readString(buffer));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static List<File> sort(final List<File> sources) {
+        final List<File> result = new ArrayList<>();
+        for (final File source : sources) {
+            result.add(source.getAbsoluteFile());
+        }
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
+    private static void writeSources(final DataOutputStream ostream, final List<File> sources) throws IOException {
+        final List<File> sorted = sort(sources);
+        ostream.writeInt(sorted.size());
+        for (final File source : sorted) {
+            writeString(ostream, source.getAbsolutePath());
+            ostream.writeLong(source.length());
+            ostream.writeLong(source.lastModified());
+        }
+    }
+
+    private static boolean matchSources(final ByteBuffer buffer, final List<File> sources) {
+        final List<File> sorted = sort(sources);
+        if (buffer.getInt() != sorted.size()) {
+            return false;
+        }
+        for (final File source : sorted) {
+            if (!readString(buffer).equals(source.getAbsolutePath())
+                    || (buffer.getLong() != source.length())
+                    || (buffer.getLong() != source.lastModified())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void writeModel(
+            final File file,
+            final List<String> settings,
+            final List<File> sources,
+            final Factory factory
+    ) throws IOException {
+        write(file, ostream -> {
+            ostream.writeInt(MODEL_MAGIC);
+            ostream.writeInt(VERSION);
+            writeString(ostream, getSpoonVersion());
+            ostream.writeInt(settings.size());
+            for (final String setting : settings) {
+                writeString(ostream, setting);
+            }
+            writeSources(ostream, sources);
+            ostream.flush();
+            new SerializationModelStreamer().save(factory, ostream);
+        });
+    }
+
+    public static Supplier<Factory> open(final File file, final List<String> settings, final List<File> sources) {
+        if (!file.exists()) {
+            return null;
+        }
+        final ByteBuffer buffer;
+        try {
+            buffer = map(file);
+        }
+        catch (final IOException e) {
+            return null;
+        }
+
+        // Anything not matching what the model was built from simply means parsing again
+        if ((buffer.getInt() != MODEL_MAGIC)
+                || (buffer.getInt() != VERSION)
+                || !readString(buffer).equals(getSpoonVersion())) {
+            return null;
+        }
+        final int count = buffer.getInt();
+        final List<String> stored = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            stored.add(readString(buffer));
+        }
+        if (!stored.equals(settings) || !matchSources(buffer, sources)) {
+            return null;
+        }
+
+        // Every user gets a copy of its own, straight from the mapping
+        final ByteBuffer model = buffer.slice();
+        return () -> new SerializationModelStreamer().load(new ByteBufferInputStream(model.duplicate()));
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(final byte[] data, final int offset, final int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int result = Math.min(length, buffer.remaining());
+            buffer.get(data, offset, result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import spoon.experimental.modelobs.EmptyModelChangeListener;
+import spoon.reflect.declaration.CtAnnotation;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.path.CtRole;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AnnotationIndex extends EmptyModelChangeListener {
+
+    // Annotation type to its occurrences, by identity as annotations compare structurally, with their insertion order
+    private final Map<String, Map<CtAnnotation<?>, Long>> occurrences;
+    private final AtomicLong sequence;
+
+    private AnnotationIndex() {
+        occurrences = new ConcurrentHashMap<>();
+        sequence = new AtomicLong();
+    }
+
+    public static AnnotationIndex build(final Factory factory) {
+        final AnnotationIndex result = new AnnotationIndex();
+        for (final CtAnnotation<?> annotation : factory.Package().getRootPackage().getElements(
+                new TypeFilter<>(CtAnnotation.class)
+        )) {
+            result.add(annotation);
+        }
+        return result;
+    }
+
+    private static String getName(final CtAnnotation<?> annotation) {
+        return annotation.getAnnotationType().getQualifiedName();
+    }
+
+    private void add(final CtAnnotation<?> annotation) {
+        occurrences
+                .computeIfAbsent(getName(annotation), n -> Collections.synchronizedMap(new IdentityHashMap<>()))
+                .putIfAbsent(annotation, sequence.incrementAndGet());
+    }
+
+    private void remove(final CtAnnotation<?> annotation) {
+        final Map<CtAnnotation<?>, Long> map = occurrences.get(getName(annotation));
+        if (map != null) {
+            map.remove(annotation);
+        }
+    }
+
+    @Override
+    public void onListAdd(final CtElement currentElement, final CtRole role, final List field, final CtElement newValue) {
+        if ((role == CtRole.ANNOTATION) && (newValue instanceof CtAnnotation)) {
+            add((CtAnnotation<?>)newValue);
+        }
+    }
+
+    @Override
+    public void onListAdd(
+            final CtElement currentElement,
+            final CtRole role,
+            final List field,
+            final int index,
+            final CtElement newValue
+    ) {
+        onListAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public void onListDelete(
+            final CtElement currentElement,
+            final CtRole role,
+            final List field,
+            final Collection<? extends CtElement> oldValue
+    ) {
+        if (role == CtRole.ANNOTATION) {
+            for (final CtElement element : oldValue) {
+                if (element instanceof CtAnnotation) {
+                    remove((CtAnnotation<?>)element);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onListDelete(
+            final CtElement currentElement,
+            final CtRole role,
+            final List field,
+            final int index,
+            final CtElement oldValue
+    ) {
+        onListDelete(currentElement, role, field, Collections.singletonList(oldValue));
+    }
+
+    @Override
+    public void onListDeleteAll(final CtElement currentElement, final CtRole role, final List field, final List oldValue) {
+        if (role == CtRole.ANNOTATION) {
+            for (final Object element : oldValue) {
+                if (element instanceof CtAnnotation) {
+                    remove((CtAnnotation<?>)element);
+                }
+            }
+        }
+    }
+
+    private static boolean isAttached(final CtAnnotation<?> annotation) {
+        if (!annotation.isParentInitialized()) {
+            return false;
+        }
+        for (final CtAnnotation<?> item : annotation.getParent().getAnnotations()) {
+            if (item == annotation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInScope(final CtElement element, final Set<CtElement> scope) {
+        CtElement current = element;
+        while (current != null) {
+            if (scope.contains(current)) {
+                return true;
+            }
+            current = current.isParentInitialized() ? current.getParent() : null;
+        }
+        return false;
+    }
+
+    public List<CtElement> getTargets(final String annotation, final Collection<? extends CtElement> scope) {
+        final Map<CtAnnotation<?>, Long> map = occurrences.get(annotation);
+        if (map == null) {
+            return Collections.emptyList();
+        }
+        final Map<CtAnnotation<?>, Long> snapshot;
+        synchronized (map) {
+            snapshot = new IdentityHashMap<>(map);
+        }
+        final Set<CtElement> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+        roots.addAll(scope);
+
+        // Same order as a walk of the sources would give, what processors created coming last
+        final List<CtAnnotation<?>> list = new ArrayList<>();
+        for (final CtAnnotation<?> item : snapshot.keySet()) {
+            if (isAttached(item) && isInScope(item, roots)) {
+                list.add(item);
+            }
+        }
+        list.sort(Comparator
+                .comparing((CtAnnotation<?> a) -> {
+                    final File file = a.getParent().getPosition().getFile();
+                    return (file == null) ? "\uffff" : file.getPath();
+                })
+                .thenComparingInt(a -> a.getParent().getPosition().getSourceStart())
+                .thenComparingLong(snapshot::get));
+
+        // The annotated element comes before the annotation itself, as in a pre-order walk
+        final List<CtElement> result = new ArrayList<>();
+        final Set<CtElement> parents = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final CtAnnotation<?> item : list) {
+            if (parents.add(item.getParent())) {
+                result.add(item.getParent());
+            }
+            result.add(item);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class AnnotationUsage {
+    private static final Pattern ANNOTATION = Pattern.compile(
+            "@\\s*([\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*" +
+            "(?:\\s*\\.\\s*[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*)*)"
+    );
+
+    // Last segment of every annotation name appearing in the sources
+    private final Set<String> names;
+
+    public AnnotationUsage() {
+        names = new HashSet<>();
+    }
+
+    public void scan(final Collection<File> files, final Charset encoding) throws IOException {
+        for (final File file : files) {
+
+            // Purely lexical, so comments and strings may give false positives but never false negatives
+            final Matcher matcher = ANNOTATION.matcher(new String(Files.readAllBytes(file.toPath()), encoding));
+            while (matcher.find()) {
+                final String name = matcher.group(1);
+                if (!name.equals("interface")) {
+                    names.add(getSimpleName(name));
+                }
+            }
+        }
+    }
+
+    private static String getSimpleName(final String name) {
+        final int index = Math.max(name.lastIndexOf('.'), name.lastIndexOf('$'));
+        return name.substring(index + 1).trim();
+    }
+
+    public boolean mayBeUsed(final String annotation) {
+        return names.contains(getSimpleName(annotation));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ClasspathIndex {
+
+    public interface Scanner {
+        Properties scan(File file) throws IOException;
+    }
+
+    static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        // Content of the bundle descriptor, null if the JAR doesn't have one
+        final Map<String, String> bundle;
+
+        Entry(final long size, final long lastModified, final String hash, final Map<String, String> bundle) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.bundle = bundle;
+        }
+    }
+
+    private static final Map<File, ClasspathIndex> INSTANCES = new HashMap<>();
+
+    private final File file;
+
+    // Path to Entry
+    private final Map<String, Entry> entries;
+
+    // Content hash to Entry
+    private final Map<String, Entry> contents;
+
+    private volatile boolean dirty;
+
+    public static synchronized ClasspathIndex open(final File file) {
+
+        // Only ever read once per build, however many projects scan their classpath
+        return INSTANCES.computeIfAbsent(file.getAbsoluteFile(), ClasspathIndex::new);
+    }
+
+    public static synchronized void clear() {
+        INSTANCES.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClasspathIndex(final File file) {
+        this.file = file;
+        Map<String, Entry> entries = null;
+        if (file.exists()) {
+            try (final ObjectInputStream istream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                entries = (Map<String, Entry>)istream.readObject();
+            }
+            catch (final IOException | ClassNotFoundException | ClassCastException e) {
+
+                // Just start over with a fresh index
+            }
+        }
+        this.entries = (entries == null) ? new ConcurrentHashMap<>() : new ConcurrentHashMap<>(entries);
+        contents = new ConcurrentHashMap<>();
+        for (final Entry entry : this.entries.values()) {
+            contents.put(entry.hash, entry);
+        }
+    }
+
+    // Safe to call concurrently, JARs are scanned outside of any lock
+    public Properties get(final File jar, final Scanner scanner) throws IOException {
+        final String path = jar.getAbsolutePath();
+        final long size = jar.length();
+        final long lastModified = jar.lastModified();
+
+        // Same path, size and modification time: we trust the JAR to be the same
+        Entry entry = entries.get(path);
+        if ((entry == null) || (entry.size != size) || (entry.lastModified != lastModified)) {
+
+            // Otherwise a JAR with the same content may already have been scanned elsewhere
+            final String hash = Files.asByteSource(jar).hash(Hashing.sha256()).toString();
+            final Entry known = contents.get(hash);
+            final Map<String, String> bundle;
+            if (known != null) {
+                bundle = known.bundle;
+            } else {
+                final Properties props = scanner.scan(jar);
+                if (props == null) {
+                    bundle = null;
+                } else {
+                    bundle = new HashMap<>();
+                    for (final String key : props.stringPropertyNames()) {
+                        bundle.put(key, props.getProperty(key));
+                    }
+                }
+            }
+            entry = new Entry(size, lastModified, hash, bundle);
+            entries.put(path, entry);
+            contents.put(hash, entry);
+            dirty = true;
+        }
+
+        if (entry.bundle == null) {
+            return null;
+        } else {
+            final Properties result = new Properties();
+            result.putAll(entry.bundle);
+            return result;
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        // JARs that went away are forgotten
+        entries.keySet().removeIf(p -> !new File(p).exists());
+        contents.values().retainAll(entries.values());
+
+        // Several daemons may share the file, so it's replaced atomically
+        file.getParentFile().mkdirs();
+        final File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (final ObjectOutputStream ostream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                ostream.writeObject(new HashMap<>(entries));
+            }
+            try {
+                java.nio.file.Files.move(
+                        temp.toPath(),
+                        file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE
+                );
+            }
+            catch (final AtomicMoveNotSupportedException e) {
+                java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            temp.delete();
+        }
+        dirty = false;
+    }
+}
@@ -31,4 +31,5 @@ public class Constants {
     public static final String TEST_CONFIGURATION_NAME = "spoonCompileTest";
     public static final String COMPILE_TASK_NAME = "spoonCompile%s";
     public static final String PROCESS_RESOURCES_TASK_NAME = "spoonProcessResources%s";
+    public static final String PLAN_TASK_NAME = "spoonPlan%s";
 }
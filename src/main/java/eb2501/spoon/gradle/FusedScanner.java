@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import spoon.processing.ProcessInterruption;
+import spoon.processing.Processor;
+import spoon.processing.TraversalStrategy;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.visitor.CtScanner;
+
+import java.util.*;
+
+public class FusedScanner extends CtScanner {
+    private final List<Processor<CtElement>> processors;
+    private final Set<Processor<CtElement>> interrupted;
+
+    // Processor class name to its accounting, null unless profiling
+    // While walking, each processor only gets its time and counts, the thread's CPU and allocations being read once
+    private final Map<String, ProcessorStats> stats;
+    private final Map<Processor<CtElement>, ProcessorStats.Local> locals;
+    private final long start;
+    private final long cpu;
+    private final long allocated;
+
+    // Element class to the processors interested in it, for each traversal strategy
+    private final Map<Class<?>, List<Processor<CtElement>>> preOrder;
+    private final Map<Class<?>, List<Processor<CtElement>>> postOrder;
+
+    public FusedScanner(final List<Processor<?>> processors) {
+        this(processors, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public FusedScanner(final List<Processor<?>> processors, final Map<String, ProcessorStats> stats) {
+        this.stats = stats;
+        this.processors = new ArrayList<>();
+        for (final Processor<?> processor : processors) {
+            this.processors.add((Processor<CtElement>)processor);
+        }
+        interrupted = new HashSet<>();
+        preOrder = new HashMap<>();
+        postOrder = new HashMap<>();
+
+        // A scanner walks on the thread creating it
+        locals = new IdentityHashMap<>();
+        if (stats == null) {
+            start = 0;
+            cpu = 0;
+            allocated = 0;
+        } else {
+            for (final Processor<CtElement> processor : this.processors) {
+                locals.put(processor, new ProcessorStats.Local());
+            }
+            start = System.nanoTime();
+            cpu = ProcessorStats.getCpuTime();
+            allocated = ProcessorStats.getAllocatedBytes();
+        }
+    }
+
+    private List<Processor<CtElement>> lookup(
+            final Map<Class<?>, List<Processor<CtElement>>> table,
+            final TraversalStrategy strategy,
+            final Class<?> cls
+    ) {
+        return table.computeIfAbsent(cls, c -> {
+            final List<Processor<CtElement>> result = new ArrayList<>();
+            for (final Processor<CtElement> processor : processors) {
+                if ((processor.getTraversalStrategy() == strategy) && accepts(processor, c)) {
+                    result.add(processor);
+                }
+            }
+            return result;
+        });
+    }
+
+    private static boolean accepts(final Processor<?> processor, final Class<?> cls) {
+
+        // Same rule as Spoon's ProcessingVisitor
+        final Set<Class<? extends CtElement>> types = processor.getProcessedElementTypes();
+        if (types == null) {
+            return false;
+        }
+        for (final Class<? extends CtElement> type : types) {
+            if (!type.isAssignableFrom(cls)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dispatch(final List<Processor<CtElement>> candidates, final CtElement element) {
+        if (candidates.isEmpty() || element.getFactory().getEnvironment().isProcessingStopped()) {
+            return;
+        }
+        for (final Processor<CtElement> processor : candidates) {
+            if (interrupted.contains(processor)) {
+                continue;
+            }
+            try {
+                if (stats == null) {
+                    if (processor.isToBeProcessed(element)) {
+                        processor.process(element);
+                    }
+                } else {
+                    profile(processor, element);
+                }
+            }
+            catch (final ProcessInterruption e) {
+
+                // The processor is done with this walk, the others aren't
+                interrupted.add(processor);
+            }
+        }
+    }
+
+    private void profile(final Processor<CtElement> processor, final CtElement element) {
+        final long start = System.nanoTime();
+        boolean processed = false;
+        try {
+            if (processor.isToBeProcessed(element)) {
+                processed = true;
+                processor.process(element);
+            }
+        }
+        finally {
+            locals.get(processor).record(System.nanoTime() - start, processed);
+        }
+    }
+
+    // Merges the walk into the processors' stats, splitting its span, CPU and allocations by their time
+    // The span is only their wall time if the walk isn't one of many running alongside
+    public void done(final boolean wall) {
+        if (stats == null) {
+            return;
+        }
+        final long span = System.nanoTime() - start;
+        final long cpu = ProcessorStats.getCpuTime() - this.cpu;
+        final long allocated = ProcessorStats.getAllocatedBytes() - this.allocated;
+        long busy = 0;
+        for (final ProcessorStats.Local local : locals.values()) {
+            busy += local.getBusyNanos();
+        }
+        for (final Map.Entry<Processor<CtElement>, ProcessorStats.Local> entry : locals.entrySet()) {
+            final ProcessorStats.Local local = entry.getValue();
+            final double share = (busy == 0) ? 1.0 / locals.size() : (double)local.getBusyNanos() / busy;
+            stats.get(entry.getKey().getClass().getName()).merge(
+                    local,
+                    wall ? Math.round(span * share) : 0,
+                    Math.round(cpu * share),
+                    Math.round(allocated * share)
+            );
+        }
+    }
+
+    public void process(final Collection<? extends CtElement> elements) {
+
+        // Only the given elements, without walking down into them
+        for (final CtElement element : elements) {
+            enter(element);
+            exit(element);
+        }
+    }
+
+    @Override
+    protected void enter(final CtElement element) {
+        dispatch(lookup(preOrder, TraversalStrategy.PRE_ORDER, element.getClass()), element);
+    }
+
+    @Override
+    protected void exit(final CtElement element) {
+        dispatch(lookup(postOrder, TraversalStrategy.POST_ORDER, element.getClass()), element);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.gradle.api.file.FileCollection;
+
+import java.io.File;
+import java.util.*;
+
+// Generated source folders of an IDEA module, the Spoon ones only being resolved when the IDE model gets built
+class GeneratedSourceDirs extends AbstractSet<File> {
+    private final Set<File> declared;
+    private final FileCollection generated;
+
+    GeneratedSourceDirs(final Set<File> declared, final FileCollection generated) {
+        this.declared = declared;
+        this.generated = generated;
+    }
+
+    private Set<File> resolve() {
+        final Set<File> result = new LinkedHashSet<>(declared);
+        result.addAll(generated.getFiles());
+        return result;
+    }
+
+    @Override
+    public Iterator<File> iterator() {
+        return Collections.unmodifiableSet(resolve()).iterator();
+    }
+
+    @Override
+    public int size() {
+        return resolve().size();
+    }
+
+    @Override
+    public boolean add(final File file) {
+        return declared.add(file);
+    }
+
+    @Override
+    public boolean remove(final Object file) {
+        return declared.remove(file);
+    }
+}
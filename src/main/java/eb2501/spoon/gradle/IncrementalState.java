@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.FileUtils;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+public class IncrementalState implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    static class Unit implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // Qualified names (with suffix) of every type declared in the file, nested ones included
+        final Set<String> declared = new HashSet<>();
+
+        // Qualified names (with suffix) of every type referenced from the file
+        final Set<String> referenced = new HashSet<>();
+
+        // Paths of the generated files, relative to the output directory
+        final Set<String> outputs = new HashSet<>();
+    }
+
+    // Source path to Unit
+    private final Map<String, Unit> units;
+
+    // What the output directory looked like at the end of the execution
+    private String fingerprint;
+
+    // Paths of the files generated for types created by processors, which no compilation unit owns
+    private final Set<String> generated;
+
+    public IncrementalState() {
+        units = new HashMap<>();
+        generated = new HashSet<>();
+    }
+
+    public static IncrementalState load(final File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (final ObjectInputStream istream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (IncrementalState)istream.readObject();
+        }
+        catch (final IOException | ClassNotFoundException | ClassCastException e) {
+
+            // A corrupted or outdated state simply means a full run
+            return null;
+        }
+    }
+
+    public void save(final File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (final ObjectOutputStream ostream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            ostream.writeObject(this);
+        }
+    }
+
+    private static String computeFingerprint(final File folder) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        if (folder.isDirectory()) {
+            final Path root = folder.toPath();
+            final List<File> files = new ArrayList<>(FileUtils.listFiles(folder, null, true));
+            files.sort(Comparator.naturalOrder());
+            for (final File file : files) {
+                hasher.putString(root.relativize(file.toPath()).toString(), StandardCharsets.UTF_8);
+                hasher.putLong(file.length());
+                hasher.putLong(file.lastModified());
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    public void updateFingerprint(final File folder) {
+        fingerprint = computeFingerprint(folder);
+    }
+
+    public boolean matchesFingerprint(final File folder) {
+
+        // Anything else touching the output directory, like a build cache hit, invalidates the state
+        return (fingerprint != null) && fingerprint.equals(computeFingerprint(folder));
+    }
+
+    public void collect(final File source, final Collection<CtType<?>> types) {
+        final Unit unit = new Unit();
+        for (final CtType<?> type : types) {
+            for (final CtType<?> declared : type.getElements(new TypeFilter<>(CtType.class))) {
+                unit.declared.add(declared.getQualifiedName());
+            }
+            for (final CtTypeReference<?> ref : type.getElements(new TypeFilter<>(CtTypeReference.class))) {
+                unit.referenced.add(ref.getQualifiedName());
+            }
+        }
+        units.put(source.getAbsolutePath(), unit);
+    }
+
+    public Set<File> getSources() {
+        final Set<File> result = new HashSet<>();
+        for (final String path : units.keySet()) {
+            result.add(new File(path));
+        }
+        return result;
+    }
+
+    public Set<String> getOutputs(final File source) {
+        final Unit unit = units.get(source.getAbsolutePath());
+        if (unit == null) {
+            return Collections.emptySet();
+        } else {
+            return unit.outputs;
+        }
+    }
+
+    public void setOutputs(final File source, final Collection<String> outputs) {
+        final Unit unit = units.get(source.getAbsolutePath());
+        if (unit != null) {
+            unit.outputs.clear();
+            unit.outputs.addAll(outputs);
+        }
+    }
+
+    public Set<String> getGenerated() {
+        return generated;
+    }
+
+    public void setGenerated(final Collection<String> generated) {
+        this.generated.clear();
+        this.generated.addAll(generated);
+    }
+
+    public Set<File> getAffected(
+            final IncrementalState previous,
+            final Collection<File> changed,
+            final Collection<File> removed
+    ) {
+
+        // Every type declared by a modified file, before or after the modification
+        final Set<String> types = new HashSet<>();
+        for (final File file : changed) {
+            final Unit before = previous.units.get(file.getAbsolutePath());
+            if (before != null) {
+                types.addAll(before.declared);
+            }
+            final Unit after = units.get(file.getAbsolutePath());
+            if (after != null) {
+                types.addAll(after.declared);
+            }
+        }
+        for (final File file : removed) {
+            final Unit before = previous.units.get(file.getAbsolutePath());
+            if (before != null) {
+                types.addAll(before.declared);
+            }
+        }
+
+        // The modified files themselves
+        final Set<File> result = new HashSet<>();
+        for (final File file : changed) {
+            if (units.containsKey(file.getAbsolutePath())) {
+                result.add(file.getAbsoluteFile());
+            }
+        }
+
+        // Plus every file referencing one of their types, directly or through other affected files
+        final Map<String, List<String>> referrers = new HashMap<>();
+        for (final Map.Entry<String, Unit> entry : units.entrySet()) {
+            for (final String type : entry.getValue().referenced) {
+                referrers.computeIfAbsent(type, t -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        final Deque<String> pending = new ArrayDeque<>(types);
+        while (!pending.isEmpty()) {
+            for (final String path : referrers.getOrDefault(pending.pop(), Collections.emptyList())) {
+                if (result.add(new File(path))) {
+                    for (final String type : units.get(path).declared) {
+                        if (types.add(type)) {
+                            pending.add(type);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import spoon.Launcher;
+import spoon.reflect.factory.Factory;
+import spoon.support.SerializationModelStreamer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ModelSnapshot {
+    private static final String MANIFEST_NAME = "manifest.bin";
+    private static final String MODEL_NAME = "model.bin";
+
+    static class Manifest implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String key;
+
+        // Input path to content hash
+        final Map<String, String> hashes;
+
+        // Template path to content hash
+        final Map<String, String> templates;
+
+        Manifest(final String key, final Map<String, String> hashes, final Map<String, String> templates) {
+            this.key = key;
+            this.hashes = hashes;
+            this.templates = templates;
+        }
+    }
+
+    private final File folder;
+    private final String key;
+    private final Map<String, String> hashes;
+    private final Map<String, String> templates;
+
+    private static Map<String, String> hash(final Collection<File> files) throws IOException {
+        final Map<String, String> result = new HashMap<>();
+        for (final File file : files) {
+            result.put(file.getAbsolutePath(), Files.asByteSource(file).hash(Hashing.sha256()).toString());
+        }
+        return result;
+    }
+
+    public ModelSnapshot(
+            final File folder,
+            final List<String> settings,
+            final Collection<File> classpath,
+            final Collection<File> inputs,
+            final Collection<File> templates
+    ) throws IOException {
+        this.folder = folder;
+
+        // The key covers everything but the inputs, which are compared one by one
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(String.valueOf(Launcher.class.getPackage().getImplementationVersion()), StandardCharsets.UTF_8);
+        for (final String setting : settings) {
+            hasher.putString(setting, StandardCharsets.UTF_8);
+        }
+        for (final File file : classpath) {
+            hasher.putString(file.getAbsolutePath(), StandardCharsets.UTF_8);
+            hasher.putLong(file.length());
+            hasher.putLong(file.lastModified());
+        }
+        key = hasher.hash().toString();
+
+        hashes = hash(inputs);
+        this.templates = hash(templates);
+    }
+
+    private Manifest readManifest() {
+        final File file = new File(folder, MANIFEST_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try (final ObjectInputStream istream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (Manifest)istream.readObject();
+        }
+        catch (final IOException | ClassNotFoundException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    // Only a whole model gets reused: JDT can't resolve a reparsed compilation unit against types which
+    // only exist in a deserialized model, so any modified input means building everything again
+    public Factory load() {
+        final Manifest manifest = readManifest();
+        if ((manifest == null) || !manifest.key.equals(key)) {
+            return null;
+        }
+        if (!manifest.hashes.equals(hashes) || !manifest.templates.equals(templates)) {
+            return null;
+        }
+        try (final InputStream istream = new BufferedInputStream(new FileInputStream(new File(folder, MODEL_NAME)))) {
+            return new SerializationModelStreamer().load(istream);
+        }
+        catch (final IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Returns the size of the serialized model
+    public long save(final Factory factory) throws IOException {
+        folder.mkdirs();
+
+        // The manifest goes last, so that it never refers to a partially written model
+        final File manifest = new File(folder, MANIFEST_NAME);
+        final File model = new File(folder, MODEL_NAME);
+        manifest.delete();
+        try (final OutputStream ostream = new BufferedOutputStream(new FileOutputStream(model))) {
+            new SerializationModelStreamer().save(factory, ostream);
+        }
+        try (final ObjectOutputStream ostream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(manifest)))) {
+            ostream.writeObject(new Manifest(key, hashes, templates));
+        }
+        return model.length();
+    }
+}
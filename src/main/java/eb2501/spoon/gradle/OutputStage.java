@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.FalseFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.gradle.api.GradleException;
+import spoon.compiler.Environment;
+import spoon.reflect.cu.CompilationUnit;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.PrettyPrinter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OutputStage {
+    private final Factory factory;
+    private final File folder;
+    private final Path tree;
+    private final Path old;
+    private final int threads;
+    private final AtomicInteger written;
+
+    public OutputStage(final Factory factory, final File folder, final File staging, final int threads) {
+        this.factory = factory;
+        this.folder = folder;
+        tree = new File(staging, "tree").toPath();
+        old = new File(staging, "old").toPath();
+        this.threads = Math.max(1, threads);
+        written = new AtomicInteger();
+    }
+
+    public static String getOutput(final CtType<?> type) {
+        return type.getQualifiedName().replace('.', File.separatorChar) + ".java";
+    }
+
+    // Hard links keep the timestamp of an unchanged file, and so keep the Java compilation incremental
+    private static void carry(final Path from, final Path to) throws IOException {
+        Files.createDirectories(to.getParent());
+        try {
+            Files.createLink(to, from);
+        }
+        catch (final UnsupportedOperationException | IOException e) {
+            Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static void move(final Path from, final Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void print(final CompilationUnit unit, final CtType<?> type) throws IOException {
+
+        // Printers keep state, hence one per type
+        final Environment environment = factory.getEnvironment();
+        final PrettyPrinter printer = environment.createPrettyPrinter();
+        printer.calculate(unit, Collections.singletonList(type));
+
+        // Spoon's JavaOutputProcessor prints through a PrintStream, hence in the platform charset
+        final byte[] content = printer.getResult().getBytes(Charset.defaultCharset());
+
+        // Identical files get carried over to the new tree as they are
+        final Path path = new File(folder, getOutput(type)).toPath();
+        final Path staged = tree.resolve(getOutput(type));
+        if (Files.isRegularFile(path) && (Files.size(path) == content.length)) {
+            if (Arrays.equals(Files.readAllBytes(path), content)) {
+                carry(path, staged);
+                return;
+            }
+        }
+        Files.createDirectories(staged.getParent());
+        Files.write(staged, content);
+        written.incrementAndGet();
+    }
+
+    public int getWritten() {
+        return written.get();
+    }
+
+    // Completes the new tree with the given files, relative to the output folder, and swaps it in,
+    // returning how many files of the old tree went away with it
+    public int publish(final Set<String> outputs) {
+        try {
+            final Path root = folder.toPath();
+            int result = 0;
+            if (folder.isDirectory()) {
+                for (final String output : outputs) {
+                    final Path path = root.resolve(output);
+                    final Path staged = tree.resolve(output);
+                    if (!Files.exists(staged) && Files.isRegularFile(path)) {
+                        carry(path, staged);
+                    }
+                }
+                for (final File file : FileUtils.listFiles(folder, null, true)) {
+                    if (!outputs.contains(root.relativize(file.toPath()).toString())) {
+                        ++result;
+                    }
+                }
+            }
+
+            // Two renames, so the folder is only ever missing in between, and never partially written
+            Files.createDirectories(root.getParent());
+            try {
+                if (folder.exists()) {
+                    Files.move(root, old, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(tree, root, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e) {
+
+                // Not on the same file store, so files get swapped one at a time
+                if (!folder.exists() && Files.exists(old)) {
+                    Files.move(old, root);
+                }
+                Files.createDirectories(root);
+                swap(outputs);
+            }
+            FileUtils.deleteDirectory(old.toFile());
+            FileUtils.deleteDirectory(tree.toFile());
+            return result;
+        }
+        catch (final IOException e) {
+            throw new GradleException("IOException thrown", e);
+        }
+    }
+
+    private void swap(final Set<String> outputs) throws IOException {
+        final Path root = folder.toPath();
+        for (final String output : outputs) {
+            final Path staged = tree.resolve(output);
+            final Path path = root.resolve(output);
+            if (Files.isRegularFile(staged) && !(Files.exists(path) && Files.isSameFile(staged, path))) {
+                Files.createDirectories(path.getParent());
+                move(staged, path);
+            }
+        }
+        for (final File file : FileUtils.listFiles(folder, null, true)) {
+            if (!outputs.contains(root.relativize(file.toPath()).toString())) {
+                file.delete();
+            }
+        }
+
+        // Empty folders may be left behind, deepest first
+        final List<File> folders = new ArrayList<>(FileUtils.listFilesAndDirs(
+                folder,
+                FalseFileFilter.INSTANCE,
+                TrueFileFilter.INSTANCE
+        ));
+        folders.sort(Comparator.comparing(File::getPath).reversed());
+        for (final File child : folders) {
+            final String[] children = child.list();
+            if (!child.equals(folder) && (children != null) && (children.length == 0)) {
+                child.delete();
+            }
+        }
+    }
+
+    public void print(final List<CtType<?>> types) {
+
+        // Whatever an interrupted execution left behind goes first
+        try {
+            FileUtils.deleteDirectory(tree.toFile());
+            FileUtils.deleteDirectory(old.toFile());
+            Files.createDirectories(tree);
+        }
+        catch (final IOException e) {
+            throw new GradleException("IOException thrown", e);
+        }
+
+        // Compilation units may get created on the way, which isn't thread-safe
+        final Map<CtType<?>, CompilationUnit> units = new LinkedHashMap<>();
+        for (final CtType<?> type : types) {
+            units.put(type, factory.CompilationUnit().getOrCreate(type));
+        }
+
+        try {
+            if ((threads == 1) || (types.size() < 2)) {
+                for (final Map.Entry<CtType<?>, CompilationUnit> entry : units.entrySet()) {
+                    print(entry.getValue(), entry.getKey());
+                }
+                return;
+            }
+
+            // Once every referenced type is resolved, printing only reads the model and can be spread
+            ShadowTypes.resolve(types);
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, types.size()));
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (final Map.Entry<CtType<?>, CompilationUnit> entry : units.entrySet()) {
+                    futures.add(executor.submit(() -> {
+                        print(entry.getValue(), entry.getKey());
+                        return null;
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        catch (final IOException e) {
+            throw new GradleException("IOException thrown", e);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while printing", e);
+        }
+        catch (final ExecutionException e) {
+            throw new GradleException("Exception thrown while printing", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.CtScanner;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
+
+public class PhaseReport {
+
+    static class Phase {
+        final String name;
+        final long start;
+        final long duration;
+        final long thread;
+
+        Phase(final String name, final long start, final long duration, final long thread) {
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+            this.thread = thread;
+        }
+    }
+
+    private final String task;
+    private final long origin;
+    private final List<Phase> phases;
+    private final Map<String, Object> statistics;
+
+    public PhaseReport(final String task, final long origin) {
+        this.task = task;
+        this.origin = origin;
+        phases = new ArrayList<>();
+        statistics = new LinkedHashMap<>();
+    }
+
+    public synchronized void record(final String name, final long start, final long duration) {
+        phases.add(new Phase(name, start - origin, duration, Thread.currentThread().getId()));
+    }
+
+    public <T> T time(final String name, final Supplier<T> supplier) {
+        final long start = System.nanoTime();
+        try {
+            return supplier.get();
+        }
+        finally {
+            record(name, start, System.nanoTime() - start);
+        }
+    }
+
+    public void time(final String name, final Runnable runnable) {
+        time(name, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public synchronized void statistic(final String name, final Object value) {
+        statistics.put(name, value);
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return new ArrayList<>(phases);
+    }
+
+    public static long getUsedHeap() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    public void collect(final Factory factory) {
+
+        // Element counts by kind, the most frequent ones being what the retained heap is made of
+        final Map<String, Integer> kinds = new TreeMap<>();
+        final int[] total = new int[1];
+        new CtScanner() {
+            @Override
+            protected void enter(final CtElement element) {
+                ++total[0];
+                kinds.merge(element.getClass().getSimpleName(), 1, Integer::sum);
+            }
+        }.scan(factory.Package().getRootPackage());
+        statistic("compilationUnits", factory.CompilationUnit().getMap().size());
+        statistic("types", factory.getModel().getAllTypes().size());
+        statistic("elements", total[0]);
+        statistic("elementsByKind", kinds);
+    }
+
+    private static String quote(final String value) {
+        final StringBuilder builder = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static String render(final Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        } else if (value instanceof Map) {
+            final StringJoiner joiner = new StringJoiner(", ", "{", "}");
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                joiner.add(quote(entry.getKey().toString()) + ": " + render(entry.getValue()));
+            }
+            return joiner.toString();
+        } else if (value instanceof Collection) {
+            final StringJoiner joiner = new StringJoiner(", ", "[", "]");
+            for (final Object item : (Collection<?>)value) {
+                joiner.add(render(item));
+            }
+            return joiner.toString();
+        } else {
+            return quote(String.valueOf(value));
+        }
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    public synchronized void writeReport(final File file) throws IOException {
+        final List<Object> list = new ArrayList<>();
+        for (final Phase phase : phases) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", phase.name);
+            map.put("startMillis", phase.start / 1000000.0);
+            map.put("durationMillis", phase.duration / 1000000.0);
+            list.add(map);
+        }
+        final Map<String, Object> root = new LinkedHashMap<>();
+        root.put("task", task);
+        root.put("phases", list);
+        root.put("statistics", statistics);
+        write(file, render(root) + System.lineSeparator());
+    }
+
+    public synchronized void writeTrace(final File file) throws IOException {
+
+        // Chrome trace-event format, complete events in microseconds
+        final List<Object> events = new ArrayList<>();
+        for (final Phase phase : phases) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", phase.name);
+            map.put("cat", "spoon");
+            map.put("ph", "X");
+            map.put("ts", phase.start / 1000);
+            map.put("dur", phase.duration / 1000);
+            map.put("pid", 1);
+            map.put("tid", phase.thread);
+            events.add(map);
+        }
+        final Map<String, Object> root = new LinkedHashMap<>();
+        root.put("traceEvents", events);
+        root.put("displayTimeUnit", "ms");
+        write(file, render(root) + System.lineSeparator());
+    }
+}
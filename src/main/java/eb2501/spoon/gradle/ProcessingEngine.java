@@ -0,0 +1,415 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import eb2501.spoon.ElementLocalProcessor;
+import org.gradle.api.GradleException;
+import spoon.compiler.Environment;
+import spoon.processing.Processor;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtPackage;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+public class ProcessingEngine {
+    private final Factory factory;
+    private final boolean fuse;
+
+    // Processor class name to its accounting, null unless profiling
+    private Map<String, ProcessorStats> stats;
+
+    // Processor class names that may run alongside others or split by compilation unit, and what each waits for
+    private Set<String> concurrent = Collections.emptySet();
+    private Set<String> elementLocal = Collections.emptySet();
+    private Map<String, List<String>> dependencies = Collections.emptyMap();
+    private int threads = 1;
+
+    // Where to find each indexed processor's elements, through the annotation it consumes
+    private AnnotationIndex index;
+    private Map<String, String> consumes = Collections.emptyMap();
+
+    // Only there while processing with more than one thread
+    private ForkJoinPool pool;
+
+    public ProcessingEngine(final Factory factory, final boolean fuse) {
+        this.factory = factory;
+        this.fuse = fuse;
+    }
+
+    public void enableProfiling() {
+        stats = new LinkedHashMap<>();
+    }
+
+    public void enableConcurrency(
+            final Set<String> concurrent,
+            final Set<String> elementLocal,
+            final Map<String, List<String>> dependencies,
+            final int threads
+    ) {
+        this.concurrent = concurrent;
+        this.elementLocal = elementLocal;
+        this.dependencies = dependencies;
+        this.threads = threads;
+    }
+
+    public void enableIndex(final AnnotationIndex index, final Map<String, String> consumes) {
+        this.index = index;
+        this.consumes = consumes;
+    }
+
+    public Collection<ProcessorStats> getStats() {
+        return (stats == null) ? Collections.emptyList() : stats.values();
+    }
+
+    private void measure(final Processor<?> processor, final Runnable runnable) {
+        if (stats == null) {
+            runnable.run();
+        } else {
+            final ProcessorStats stat = stats.get(processor.getClass().getName());
+            final long wall = System.nanoTime();
+            final long cpu = ProcessorStats.getCpuTime();
+            final long allocated = ProcessorStats.getAllocatedBytes();
+            try {
+                runnable.run();
+            }
+            finally {
+                stat.record(wall, cpu, allocated);
+            }
+        }
+    }
+
+    public Processor<?> instantiate(final String name) {
+        try {
+            final Class<?> cls = factory.getEnvironment().getInputClassLoader().loadClass(name);
+            return (Processor<?>)cls.getDeclaredConstructor().newInstance();
+        }
+        catch (final ReflectiveOperationException | ClassCastException e) {
+            throw new GradleException(String.format("Unable to instantiate processor '%s'", name), e);
+        }
+    }
+
+    public List<List<Processor<?>>> instantiate(final List<List<String>> stages) {
+        final List<List<Processor<?>>> result = new ArrayList<>();
+        for (final List<String> stage : stages) {
+            final List<Processor<?>> processors = new ArrayList<>();
+            for (final String name : stage) {
+                processors.add(instantiate(name));
+            }
+            result.add(processors);
+        }
+        return result;
+    }
+
+    public void process(final List<List<Processor<?>>> stages, final Collection<? extends CtElement> scope) {
+
+        // Same as Spoon, every processor gets initialized before any processing happens
+        for (final List<Processor<?>> stage : stages) {
+            for (final Processor<?> processor : stage) {
+                processor.setFactory(factory);
+                if (stats != null) {
+                    stats.computeIfAbsent(processor.getClass().getName(), ProcessorStats::new);
+                }
+                measure(processor, processor::init);
+            }
+        }
+
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+        try {
+
+            // Without anything able to run concurrently, the stages are simply run in order
+            boolean schedule = false;
+            for (final List<Processor<?>> stage : stages) {
+                for (final Processor<?> processor : stage) {
+                    schedule |= concurrent.contains(processor.getClass().getName());
+                }
+            }
+            if (schedule && (pool != null)) {
+                schedule(stages, scope);
+                return;
+            }
+
+            // Processors of a stage don't depend on each other, so they can share a single walk
+            for (final List<Processor<?>> stage : stages) {
+                if (fuse) {
+                    run(stage, scope);
+                } else {
+                    for (final Processor<?> processor : stage) {
+                        run(Collections.singletonList(processor), scope);
+                    }
+                }
+            }
+        }
+        finally {
+            if (pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
+        }
+    }
+
+    private void schedule(final List<List<Processor<?>>> stages, final Collection<? extends CtElement> scope) {
+
+        // Concurrent processors share the model, only reading it, the others have it all to themselves
+        // Readers resolving references lazily would build shadow types alongside each other, hence the guard
+        final Environment environment = factory.getEnvironment();
+        final ReadOnlyGuard guard = new ReadOnlyGuard(
+                factory.Package().getRootPackage(),
+                environment.getModelChangeListener()
+        );
+        environment.setModelChangeListener(guard);
+        try {
+            schedule(stages, scope, guard);
+        }
+        finally {
+            environment.setModelChangeListener(guard.getDelegate());
+        }
+    }
+
+    private void schedule(
+            final List<List<Processor<?>>> stages,
+            final Collection<? extends CtElement> scope,
+            final ReadOnlyGuard guard
+    ) {
+        final Map<String, CompletableFuture<Void>> done = new HashMap<>();
+        final List<CompletableFuture<Void>> all = new ArrayList<>();
+
+        // Writers and readers keep their plan order with respect to each other, which keeps the outcome
+        // deterministic, readers only running alongside the readers between the same two writers
+        CompletableFuture<Void> writer = CompletableFuture.completedFuture(null);
+        List<CompletableFuture<Void>> readers = new ArrayList<>();
+
+        // Once a writer is done, the references get resolved before any reader gets to them
+        CompletableFuture<Void> resolved = null;
+        for (final List<Processor<?>> stage : stages) {
+
+            // When fusing, the other processors of a stage share a single walk, as they do without scheduling
+            final List<List<Processor<?>>> groups = new ArrayList<>();
+            final List<Processor<?>> fused = new ArrayList<>();
+            for (final Processor<?> processor : stage) {
+                if (fuse && !concurrent.contains(processor.getClass().getName())) {
+                    if (fused.isEmpty()) {
+                        groups.add(fused);
+                    }
+                    fused.add(processor);
+                } else {
+                    groups.add(Collections.singletonList(processor));
+                }
+            }
+
+            final List<CompletableFuture<Void>> current = new ArrayList<>();
+            for (final List<Processor<?>> group : groups) {
+
+                // Waiting on the producers when known, on every previous stage otherwise
+                final List<CompletableFuture<Void>> waits = new ArrayList<>();
+                for (final Processor<?> processor : group) {
+                    final List<String> producers = dependencies.get(processor.getClass().getName());
+                    if (producers == null) {
+                        waits.addAll(all);
+                    } else {
+                        for (final String producer : producers) {
+                            final CompletableFuture<Void> future = done.get(producer);
+                            if (future != null) {
+                                waits.add(future);
+                            }
+                        }
+                    }
+                }
+
+                final CompletableFuture<Void> future;
+                if ((group.size() == 1) && concurrent.contains(group.get(0).getClass().getName())) {
+                    if (resolved == null) {
+                        resolved = writer.thenRunAsync(() -> ShadowTypes.resolve(scope), pool);
+                    }
+                    waits.add(resolved);
+                    future = CompletableFuture.allOf(waits.toArray(new CompletableFuture[0])).thenRunAsync(
+                            () -> execute(guard, group, scope),
+                            pool
+                    );
+                    readers.add(future);
+                } else {
+                    waits.add(writer);
+                    waits.addAll(readers);
+                    future = CompletableFuture.allOf(waits.toArray(new CompletableFuture[0])).thenRunAsync(
+                            () -> execute(null, group, scope),
+                            pool
+                    );
+                    writer = future;
+                    readers = new ArrayList<>();
+                    resolved = null;
+                }
+                for (final Processor<?> processor : group) {
+                    done.put(processor.getClass().getName(), future);
+                }
+                current.add(future);
+            }
+            all.addAll(current);
+        }
+
+        // Completing a future happens-before whatever depends on it, and so before this returns
+        join(all);
+    }
+
+    private static void join(final List<CompletableFuture<Void>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+        catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void execute(
+            final ReadOnlyGuard guard,
+            final List<Processor<?>> processors,
+            final Collection<? extends CtElement> scope
+    ) {
+        if (guard == null) {
+            run(processors, scope);
+        } else {
+            guard.enter();
+            try {
+                run(processors, scope);
+            }
+            finally {
+                guard.exit();
+            }
+        }
+    }
+
+    private boolean isElementLocal(final Processor<?> processor) {
+        return (processor instanceof ElementLocalProcessor) || elementLocal.contains(processor.getClass().getName());
+    }
+
+    private void run(final List<Processor<?>> processors, final Collection<? extends CtElement> scope) {
+        final List<Processor<?>> fused = new ArrayList<>();
+        for (final Processor<?> processor : processors) {
+            final String annotation = (index == null) ? null : consumes.get(processor.getClass().getName());
+            final boolean local = (pool != null) && isElementLocal(processor);
+            if (annotation != null) {
+
+                // Only what carries the consumed annotation, instead of the whole scope
+                final List<CtElement> targets = index.getTargets(annotation, scope);
+                if (local) {
+                    partition(processor, targets, false);
+                } else {
+                    final FusedScanner scanner = new FusedScanner(Collections.singletonList(processor), stats);
+                    scanner.process(targets);
+                    scanner.done(true);
+                }
+            } else if (local) {
+                partition(processor, scope, true);
+            } else {
+                fused.add(processor);
+            }
+        }
+        if (!fused.isEmpty()) {
+            final FusedScanner scanner = new FusedScanner(fused, stats);
+            scanner.scan(scope);
+            scanner.done(true);
+        }
+        for (final Processor<?> processor : processors) {
+            measure(processor, processor::processingDone);
+        }
+    }
+
+    private static void collect(final CtPackage pkg, final List<CtType<?>> types) {
+        final Deque<CtPackage> pending = new ArrayDeque<>();
+        pending.add(pkg);
+        while (!pending.isEmpty()) {
+            final CtPackage current = pending.poll();
+            types.addAll(current.getTypes());
+            pending.addAll(current.getPackages());
+        }
+    }
+
+    private void partition(
+            final Processor<?> processor,
+            final Collection<? extends CtElement> scope,
+            final boolean walk
+    ) {
+
+        // Compilation units sorted by path, so that partitions are always handed out in the same order
+        final Map<String, List<CtElement>> units = new TreeMap<>();
+        final List<CtPackage> packages = new ArrayList<>();
+        final List<CtType<?>> types = new ArrayList<>();
+        for (final CtElement element : scope) {
+            if (walk && (element instanceof CtPackage)) {
+                packages.add((CtPackage)element);
+                collect((CtPackage)element, types);
+            } else {
+                final File file = element.getPosition().getFile();
+                units.computeIfAbsent((file == null) ? "" : file.getPath(), f -> new ArrayList<>()).add(element);
+            }
+        }
+        for (final CtType<?> type : types) {
+            final File file = type.getPosition().getFile();
+            units.computeIfAbsent((file == null) ? "" : file.getPath(), f -> new ArrayList<>()).add(type);
+        }
+
+        // The packages themselves are walked first, without going down into their types
+        final long start = System.nanoTime();
+        final List<Processor<?>> list = Collections.singletonList(processor);
+        if (!packages.isEmpty()) {
+            final FusedScanner scanner = new FusedScanner(list, stats) {
+                @Override
+                public void scan(final CtElement element) {
+                    if (!(element instanceof CtType)) {
+                        super.scan(element);
+                    }
+                }
+            };
+            scanner.scan(packages);
+            scanner.done(false);
+        }
+
+        // Element-local processors only touch what they're given, so each unit can go its own way
+        // As long as they don't build shadow types alongside each other while resolving references
+        ShadowTypes.resolve(scope);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final List<CtElement> unit : units.values()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                final FusedScanner scanner = new FusedScanner(list, stats);
+                if (walk) {
+                    scanner.scan(unit);
+                } else {
+                    scanner.process(unit);
+                }
+                scanner.done(false);
+            }, pool));
+        }
+        join(futures);
+
+        // The units being processed alongside, the processor took as long as the span of them all
+        if (stats != null) {
+            stats.get(processor.getClass().getName()).addWall(System.nanoTime() - start);
+        }
+    }
+}
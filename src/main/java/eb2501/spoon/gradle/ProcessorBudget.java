@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eb2501.spoon.gradle;
+
+import org.gradle.api.GradleException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// Limits on what a single processor may spend, any of which can be left out
+public class ProcessorBudget implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long wallMillis;
+    private Long cpuMillis;
+    private Long allocatedBytes;
+
+    public static ProcessorBudget ofWall(final long millis) {
+        final ProcessorBudget result = new ProcessorBudget();
+        result.wallMillis = millis;
+        return result;
+    }
+
+    // Either a plain number of wall milliseconds or "wall:<ms>,cpu:<ms>,alloc:<bytes>", in any order
+    public static ProcessorBudget parse(final String value) {
+        final String trimmed = value.trim();
+        if (!trimmed.contains(":")) {
+            return ofWall(parseLong(trimmed, value));
+        }
+        final ProcessorBudget result = new ProcessorBudget();
+        for (final String part : trimmed.split(",")) {
+            final int index = part.indexOf(':');
+            if (index < 0) {
+                throw new GradleException(String.format("Invalid processor budget '%s'", value));
+            }
+            final String key = part.substring(0, index).trim();
+            final long amount = parseLong(part.substring(index + 1).trim(), value);
+            switch (key) {
+                case "wall":
+                    result.wallMillis = amount;
+                    break;
+                case "cpu":
+                    result.cpuMillis = amount;
+                    break;
+                case "alloc":
+                    result.allocatedBytes = amount;
+                    break;
+                default:
+                    throw new GradleException(String.format(
+                            "Unknown resource '%s' in processor budget '%s', expected wall, cpu or alloc",
+                            key,
+                            value
+                    ));
+            }
+        }
+        return result;
+    }
+
+    private static long parseLong(final String text, final String value) {
+        try {
+            return Long.parseLong(text);
+        }
+        catch (final NumberFormatException e) {
+            throw new GradleException(String.format("Invalid processor budget '%s'", value), e);
+        }
+    }
+
+    // One message per resource the processor went over
+    public List<String> check(final ProcessorStats stat) {
+        final List<String> result = new ArrayList<>();
+        if ((wallMillis != null) && (stat.getWallMillis() > wallMillis)) {
+            result.add(String.format(
+                    "Processor '%s' took %d ms, over its budget of %d ms",
+                    stat.getName(),
+                    stat.getWallMillis(),
+                    wallMillis
+            ));
+        }
+        if ((cpuMillis != null) && (stat.getCpuMillis() > cpuMillis)) {
+            result.add(String.format(
+                    "Processor '%s' used %d ms of cpu, over its budget of %d ms",
+                    stat.getName(),
+                    stat.getCpuMillis(),
+                    cpuMillis
+            ));
+        }
+        if ((allocatedBytes != null) && (stat.getAllocatedTotal() > allocatedBytes)) {
+            result.add(String.format(
+                    "Processor '%s' allocated %d bytes, over its budget of %d bytes",
+                    stat.getName(),
+                    stat.getAllocatedTotal(),
+                    allocatedBytes
+            ));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final List<String> parts = new ArrayList<>();
+        if (wallMillis != null) {
+            parts.add("wall:" + wallMillis);
+        }
+        if (cpuMillis != null) {
+            parts.add("cpu:" + cpuMillis);
+        }
+        if (allocatedBytes != null) {
+            parts.add("alloc:" + allocatedBytes);
+        }
+        return String.join(",", parts);
+    }
+}
@@ -18,13 +18,13 @@ package eb2501.spoon.gradle;
 
 import org.gradle.api.GradleException;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,6 +33,8 @@ public class ProcessorGraph {
     private static final Pattern PROCESSOR_PATH_KEY = Pattern.compile("processor\\.([^.]+)\\.path");
     private static final Pattern PROCESSOR_CONSUME_KEY = Pattern.compile("processor\\.([^.]+)\\.consumes");
     private static final Pattern PROCESSOR_PRODUCE_KEY = Pattern.compile("processor\\.([^.]+)\\.produces");
+    private static final Pattern PROCESSOR_CONCURRENT_KEY = Pattern.compile("processor\\.([^.]+)\\.concurrent");
+    private static final Pattern PROCESSOR_ELEMENT_LOCAL_KEY = Pattern.compile("processor\\.([^.]+)\\.elementLocal");
 
     // Annotation to Processor
     final Map<String, String> processor;
@@ -43,47 +45,126 @@ public class ProcessorGraph {
     // Annotation to List<Annotation>
     final Map<String, List<String>> produces;
 
+    // Processors that only read the model, so that they may run alongside others
+    final Set<String> concurrent;
+
+    // Processors whose elements may be processed in parallel
+    final Set<String> elementLocal;
+
+    // Persistent index of the bundle descriptors found in JARs, if any
+    private final ClasspathIndex index;
+
     public ProcessorGraph() {
+        this(null);
+    }
+
+    public ProcessorGraph(final ClasspathIndex index) {
+        this.index = index;
         processor = new HashMap<>();
         annotation = new HashMap<>();
         produces = new HashMap<>();
+        concurrent = new HashSet<>();
+        elementLocal = new HashSet<>();
     }
 
     public void readClasspath(final File... files) throws IOException {
+        final List<File> existing = new ArrayList<>();
         for (final File file : files) {
-            if (!file.exists()) {
-                continue;
+            if (file.exists()) {
+                existing.add(file);
             }
-            if (file.getName().toLowerCase().endsWith(".jar")) {
-                readJarClasspath(file);
-            } else if (file.isDirectory()) {
-                readFolderClasspath(file);
+        }
+        if (existing.isEmpty()) {
+            return;
+        }
+
+        // Scan everything concurrently, but merge in classpath order so that conflicts are reported consistently
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(existing.size(), Runtime.getRuntime().availableProcessors())
+        );
+        try {
+            final List<Future<Properties>> futures = new ArrayList<>();
+            for (final File file : existing) {
+                futures.add(executor.submit(() -> scan(file)));
             }
+            for (int i = 0; i < existing.size(); ++i) {
+                final Properties props;
+                try {
+                    props = futures.get(i).get();
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GradleException("Interrupted while scanning the classpath", e);
+                }
+                catch (final ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException)e.getCause();
+                    }
+                    throw new GradleException("Exception thrown while scanning the classpath", e.getCause());
+                }
+                if (props != null) {
+                    readBundleProperties(existing.get(i), props);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
         }
     }
 
-    private void readJarClasspath(final File file) throws IOException {
-        final JarFile jar = new JarFile(file);
-        final JarEntry entry = jar.getJarEntry(PROPERTIES_PATH);
-        if (entry != null) {
-            try (final InputStream istream = jar.getInputStream(entry)) {
-                readBundleProperties(file, istream);
-            }
+    private Properties scan(final File file) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".jar")) {
+            return (index == null) ? scanJar(file) : index.get(file, ProcessorGraph::scanJar);
+        } else if (file.isDirectory()) {
+            return scanFolder(file);
+        } else {
+            return null;
         }
     }
 
-    private void readFolderClasspath(final File folder) throws IOException {
+    static Properties scanJar(final File file) throws IOException {
+        final byte[] data = ZipCentralDirectory.readEntry(file, PROPERTIES_PATH);
+        if (data == null) {
+            return null;
+        }
+        final Properties props = new Properties();
+        props.load(new ByteArrayInputStream(data));
+        return props;
+    }
+
+    private static Properties scanFolder(final File folder) throws IOException {
         final File file = new File(folder, PROPERTIES_PATH);
-        if (file.exists()) {
-            try (final InputStream istream = new FileInputStream(file)) {
-                readBundleProperties(file, istream);
-            }
+        if (!file.exists()) {
+            return null;
+        }
+        try (final InputStream istream = new FileInputStream(file)) {
+            final Properties props = new Properties();
+            props.load(istream);
+            return props;
         }
     }
 
-    private void readBundleProperties(final File file, final InputStream istream) throws IOException {
-        final Properties props = new Properties();
-        props.load(istream);
+    private static void readFlag(
+            final File file,
+            final String name,
+            final String key,
+            final String value,
+            final Map<String, Boolean> flags
+    ) {
+        final String trimmed = value.trim();
+        if (!trimmed.equals("true") && !trimmed.equals("false")) {
+            throw new GradleException(String.format(
+                    "Processor '%s' in file '%s' gives %s '%s' instead of 'true' or 'false'",
+                    name,
+                    file,
+                    key,
+                    value
+            ));
+        }
+        flags.put(name, Boolean.valueOf(trimmed));
+    }
+
+    private void readBundleProperties(final File file, final Properties props) {
 
         // Name to Annotation
         final Map<String, String> path = new HashMap<>();
@@ -94,6 +175,12 @@ public class ProcessorGraph {
         // Name to List<Annotation>
         final Map<String, List<String>> produces = new HashMap<>();
 
+        // Name to Boolean
+        final Map<String, Boolean> concurrent = new HashMap<>();
+
+        // Name to Boolean
+        final Map<String, Boolean> elementLocal = new HashMap<>();
+
         Matcher matcher;
         for (final String key : props.stringPropertyNames()) {
 
@@ -150,10 +237,23 @@ public class ProcessorGraph {
                                 value
                         ));
                     }
+                    list.add(trimmed);
                 }
                 continue;
             }
 
+            matcher = PROCESSOR_CONCURRENT_KEY.matcher(key);
+            if (matcher.matches()) {
+                readFlag(file, matcher.group(1), "concurrent", props.getProperty(key), concurrent);
+                continue;
+            }
+
+            matcher = PROCESSOR_ELEMENT_LOCAL_KEY.matcher(key);
+            if (matcher.matches()) {
+                readFlag(file, matcher.group(1), "elementLocal", props.getProperty(key), elementLocal);
+                continue;
+            }
+
             throw new GradleException(String.format("Property '%s' in file '%s' is not recognized", key, file));
         }
 
@@ -185,6 +285,24 @@ public class ProcessorGraph {
                 ));
             }
         }
+        for (final String name : concurrent.keySet()) {
+            if (!path.containsKey(name)) {
+                throw new GradleException(String.format(
+                        "Processor '%s' in file '%s' has a concurrent but no path",
+                        name,
+                        file
+                ));
+            }
+        }
+        for (final String name : elementLocal.keySet()) {
+            if (!path.containsKey(name)) {
+                throw new GradleException(String.format(
+                        "Processor '%s' in file '%s' has an elementLocal but no path",
+                        name,
+                        file
+                ));
+            }
+        }
 
         // Populate mappings
         for (final Map.Entry<String, String> entry : path.entrySet()) {
@@ -208,28 +326,157 @@ public class ProcessorGraph {
             this.processor.put(annotation, entry.getValue());
             this.annotation.put(entry.getValue(), annotation);
             this.produces.put(annotation, produces.get(entry.getKey()));
+            if (concurrent.getOrDefault(entry.getKey(), false)) {
+                this.concurrent.add(entry.getValue());
+            }
+            if (elementLocal.getOrDefault(entry.getKey(), false)) {
+                this.elementLocal.add(entry.getValue());
+            }
         }
     }
 
-    private void populate(final LinkedList<String> processors, final Set<String> done, final String annotation) {
-        if (!done.contains(annotation)) {
-            final List<String> list = produces.get(annotation);
-            if (list != null) {
-                for (final String item : list) {
-                    populate(processors, done, item);
-                }
+    public String getConsumes(final String path) {
+        return annotation.get(path);
+    }
+
+    public List<String> getProduces(final String path) {
+        final List<String> result = produces.get(annotation.get(path));
+        return (result == null) ? Collections.emptyList() : result;
+    }
+
+    public List<String> getProducers(final String path) {
+        final String consumed = annotation.get(path);
+        final Set<String> result = new TreeSet<>();
+        for (final Map.Entry<String, List<String>> entry : produces.entrySet()) {
+            if ((entry.getValue() != null) && entry.getValue().contains(consumed)) {
+                result.add(processor.get(entry.getKey()));
             }
-            processors.addFirst(processor.get(annotation));
-            done.add(annotation);
         }
+        return new ArrayList<>(result);
+    }
+
+    public boolean isConcurrent(final String path) {
+        return concurrent.contains(path);
+    }
+
+    public boolean isElementLocal(final String path) {
+        return elementLocal.contains(path);
     }
 
     public List<String> getProcessors() {
-        final LinkedList<String> result = new LinkedList<>();
-        final Set<String> done = new HashSet<>();
+        return getProcessors(a -> true);
+    }
+
+    public List<String> getProcessors(final Predicate<String> used) {
+        final List<String> result = new ArrayList<>();
+        for (final List<String> stage : getStages(used)) {
+            result.addAll(stage);
+        }
+        return result;
+    }
+
+    private Set<String> getReachable(final Predicate<String> used) {
+
+        // Annotations that may appear, either in the sources or because a processor produces them
+        final Set<String> result = new HashSet<>();
+        final Deque<String> pending = new ArrayDeque<>();
         for (final String annotation : processor.keySet()) {
-            populate(result, done, annotation);
+            if (used.test(annotation)) {
+                pending.add(annotation);
+            }
+        }
+        while (!pending.isEmpty()) {
+            final String annotation = pending.poll();
+            if (result.add(annotation)) {
+                final List<String> list = produces.get(annotation);
+                if (list != null) {
+                    pending.addAll(list);
+                }
+            }
         }
         return result;
     }
+
+    public List<List<String>> getStages(final Predicate<String> used) {
+
+        // Consumed annotation to the consumed annotations of the processors it feeds, sorted for a stable plan
+        final Map<String, Set<String>> successors = new TreeMap<>();
+        final Map<String, Integer> indegree = new TreeMap<>();
+        for (final String annotation : getReachable(used)) {
+            if (processor.containsKey(annotation)) {
+                successors.put(annotation, new TreeSet<>());
+                indegree.put(annotation, 0);
+            }
+        }
+        for (final Map.Entry<String, Set<String>> entry : successors.entrySet()) {
+            final List<String> list = produces.get(entry.getKey());
+            if (list != null) {
+                for (final String item : list) {
+                    if (successors.containsKey(item) && entry.getValue().add(item)) {
+                        indegree.merge(item, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        // Kahn's algorithm one level at a time, each level only depending on the previous ones
+        final List<List<String>> result = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        for (final Map.Entry<String, Integer> entry : indegree.entrySet()) {
+            if (entry.getValue() == 0) {
+                current.add(entry.getKey());
+            }
+        }
+        int planned = 0;
+        while (!current.isEmpty()) {
+            final List<String> stage = new ArrayList<>();
+            final Set<String> next = new TreeSet<>();
+            for (final String annotation : current) {
+                stage.add(processor.get(annotation));
+                for (final String item : successors.get(annotation)) {
+                    if (indegree.merge(item, -1, Integer::sum) == 0) {
+                        next.add(item);
+                    }
+                }
+            }
+            Collections.sort(stage);
+            result.add(stage);
+            planned += current.size();
+            current = new ArrayList<>(next);
+        }
+        if (planned < successors.size()) {
+            throw new GradleException(describeCycle(successors, indegree));
+        }
+        return result;
+    }
+
+    private String describeCycle(final Map<String, Set<String>> successors, final Map<String, Integer> indegree) {
+
+        // Whatever's left has a producer that's left too, so walking producers back eventually loops
+        final Map<String, String> producer = new TreeMap<>();
+        for (final Map.Entry<String, Set<String>> entry : successors.entrySet()) {
+            if (indegree.get(entry.getKey()) > 0) {
+                for (final String item : entry.getValue()) {
+                    if (indegree.get(item) > 0) {
+                        producer.putIfAbsent(item, entry.getKey());
+                    }
+                }
+            }
+        }
+        final List<String> path = new ArrayList<>();
+        String annotation = producer.keySet().iterator().next();
+        while (!path.contains(annotation)) {
+            path.add(annotation);
+            annotation = producer.get(annotation);
+        }
+        final List<String> cycle = new ArrayList<>(path.subList(path.indexOf(annotation), path.size()));
+        Collections.reverse(cycle);
+        cycle.add(cycle.get(0));
+
+        final StringJoiner joiner = new StringJoiner(" -> ");
+        for (final String item : cycle) {
+            joiner.add(String.format("%s (consumes %s)", processor.get(item), item));
+        }
+        return String.format("Processors form a cycle through their produces: %s", joiner);
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ProcessorStats {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String name;
+    private long wallNanos;
+    private long cpuNanos;
+    private long allocatedBytes;
+    private long visited;
+    private long processed;
+
+    public ProcessorStats(final String name) {
+        this.name = name;
+    }
+
+    public static long getCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    public static long getAllocatedBytes() {
+
+        // Only HotSpot-like JVMs know about allocations
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    // Accounting of a single walk, only ever touched by the thread doing it
+    public static class Local {
+        private long busyNanos;
+        private long visited;
+        private long processed;
+
+        public void record(final long nanos, final boolean processed) {
+            busyNanos += nanos;
+            ++visited;
+            if (processed) {
+                ++this.processed;
+            }
+        }
+
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+    }
+
+    public synchronized void record(final long wall, final long cpu, final long allocated) {
+        wallNanos += System.nanoTime() - wall;
+        cpuNanos += getCpuTime() - cpu;
+        allocatedBytes += getAllocatedBytes() - allocated;
+    }
+
+    // Once per walk, the wall time being left to whoever knows the span of the processor's run
+    public synchronized void merge(final Local local, final long wall, final long cpu, final long allocated) {
+        wallNanos += wall;
+        cpuNanos += cpu;
+        allocatedBytes += allocated;
+        visited += local.visited;
+        processed += local.processed;
+    }
+
+    public synchronized void addWall(final long nanos) {
+        wallNanos += nanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized long getWallMillis() {
+        return wallNanos / 1000000;
+    }
+
+    public synchronized long getCpuMillis() {
+        return cpuNanos / 1000000;
+    }
+
+    // Not getAllocatedBytes, which samples the current thread
+    public synchronized long getAllocatedTotal() {
+        return allocatedBytes;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("wallMillis", wallNanos / 1000000.0);
+        result.put("cpuMillis", cpuNanos / 1000000.0);
+        result.put("allocatedBytes", allocatedBytes);
+        result.put("visited", visited);
+        result.put("processed", processed);
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "%s: %d ms wall, %d ms cpu, %d bytes allocated, %d out of %d elements processed",
+                name,
+                wallNanos / 1000000,
+                cpuNanos / 1000000,
+                allocatedBytes,
+                processed,
+                visited
+        );
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.gradle.api.GradleException;
+import spoon.experimental.modelobs.EmptyModelChangeListener;
+import spoon.experimental.modelobs.FineModelChangeListener;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtPackage;
+import spoon.reflect.path.CtRole;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Concurrent processors only read the model, so any change to it while one of them runs is a failure
+// That includes shadow types built lazily, the references of the scope being resolved beforehand
+class ReadOnlyGuard extends EmptyModelChangeListener {
+    private final CtPackage root;
+    private final FineModelChangeListener delegate;
+    private final AtomicInteger readers;
+
+    ReadOnlyGuard(final CtPackage root, final FineModelChangeListener delegate) {
+        this.root = root;
+        this.delegate = delegate;
+        readers = new AtomicInteger();
+    }
+
+    FineModelChangeListener getDelegate() {
+        return delegate;
+    }
+
+    void enter() {
+        readers.incrementAndGet();
+    }
+
+    void exit() {
+        readers.decrementAndGet();
+    }
+
+    private boolean isAttached(final CtElement element) {
+        CtElement current = element;
+        while (current != root) {
+            if (!current.isParentInitialized()) {
+                return false;
+            }
+            current = current.getParent();
+        }
+        return true;
+    }
+
+    private void check(final CtElement currentElement, final CtRole role) {
+        if ((readers.get() > 0) && isAttached(currentElement)) {
+            throw new GradleException(String.format(
+                    "A concurrent processor modified the %s of '%s', concurrent processors may only read the model",
+                    role,
+                    currentElement.getShortRepresentation()
+            ));
+        }
+    }
+
+    @Override
+    public void onObjectUpdate(
+            final CtElement currentElement,
+            final CtRole role,
+            final CtElement newValue,
+            final CtElement oldValue
+    ) {
+        check(currentElement, role);
+        delegate.onObjectUpdate(currentElement, role, newValue, oldValue);
+    }
+
+    @Override
+    public void onObjectUpdate(
+            final CtElement currentElement,
+            final CtRole role,
+            final Object newValue,
+            final Object oldValue
+    ) {
+        check(currentElement, role);
+        delegate.onObjectUpdate(currentElement, role, newValue, oldValue);
+    }
+
+    @Override
+    public void onObjectDelete(final CtElement currentElement, final CtRole role, final CtElement oldValue) {
+        check(currentElement, role);
+        delegate.onObjectDelete(currentElement, role, oldValue);
+    }
+
+    @Override
+    public void onListAdd(final CtElement currentElement, final CtRole role, final List field, final CtElement newValue) {
+        check(currentElement, role);
+        delegate.onListAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public void onListAdd(
+            final CtElement currentElement,
+            final CtRole role,
+            final List field,
+            final int index,
+            final CtElement newValue
+    ) {
+        check(currentElement, role);
+        delegate.onListAdd(currentElement, role, field, index, newValue);
+    }
+
+    @Override
+    public void onListDelete(
+            final CtElement currentElement,
+            final CtRole role,
+            final List field,
+            final Collection<? extends CtElement> oldValue
+    ) {
+        check(currentElement, role);
+        delegate.onListDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onListDelete(
+            final CtElement currentElement,
+            final CtRole role,
+            final List field,
+            final int index,
+            final CtElement oldValue
+    ) {
+        check(currentElement, role);
+        delegate.onListDelete(currentElement, role, field, index, oldValue);
+    }
+
+    @Override
+    public void onListDeleteAll(final CtElement currentElement, final CtRole role, final List field, final List oldValue) {
+        check(currentElement, role);
+        delegate.onListDeleteAll(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public <K, V> void onMapAdd(
+            final CtElement currentElement,
+            final CtRole role,
+            final Map<K, V> field,
+            final K key,
+            final CtElement newValue
+    ) {
+        check(currentElement, role);
+        delegate.onMapAdd(currentElement, role, field, key, newValue);
+    }
+
+    @Override
+    public <K, V> void onMapDeleteAll(
+            final CtElement currentElement,
+            final CtRole role,
+            final Map<K, V> field,
+            final Map<K, V> oldValue
+    ) {
+        check(currentElement, role);
+        delegate.onMapDeleteAll(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onSetAdd(final CtElement currentElement, final CtRole role, final Set field, final CtElement newValue) {
+        check(currentElement, role);
+        delegate.onSetAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public <T extends Enum> void onSetAdd(final CtElement currentElement, final CtRole role, final Set field, final T newValue) {
+        check(currentElement, role);
+        delegate.onSetAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public void onSetDelete(final CtElement currentElement, final CtRole role, final Set field, final CtElement oldValue) {
+        check(currentElement, role);
+        delegate.onSetDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public <T extends Enum> void onSetDelete(final CtElement currentElement, final CtRole role, final Set field, final T oldValue) {
+        check(currentElement, role);
+        delegate.onSetDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onSetDeleteAll(final CtElement currentElement, final CtRole role, final Set field, final Set oldValue) {
+        check(currentElement, role);
+        delegate.onSetDeleteAll(currentElement, role, field, oldValue);
+    }
+}
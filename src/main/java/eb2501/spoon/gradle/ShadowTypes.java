@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtFieldReference;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.util.*;
+
+// Whatever reads the model from several threads at once needs the shadow types built beforehand
+class ShadowTypes {
+
+    private ShadowTypes() {}
+
+    // Resolving a reference builds its shadow type the first time, which isn't thread-safe
+    // The imports computed for printing look up the hierarchy of what's referenced as well
+    static void resolve(final Collection<? extends CtElement> roots) {
+        final Set<CtType<?>> resolved = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<CtType<?>> pending = new ArrayDeque<>();
+        for (final CtElement root : roots) {
+            for (final CtTypeReference<?> ref : root.getElements(new TypeFilter<>(CtTypeReference.class))) {
+                final CtType<?> declaration = ref.getTypeDeclaration();
+                if ((declaration != null) && resolved.add(declaration)) {
+                    pending.add(declaration);
+                }
+            }
+            for (final CtFieldReference<?> ref : root.getElements(new TypeFilter<>(CtFieldReference.class))) {
+                ref.getFieldDeclaration();
+            }
+            for (final CtExecutableReference<?> ref : root.getElements(new TypeFilter<>(CtExecutableReference.class))) {
+                ref.getExecutableDeclaration();
+            }
+        }
+        while (!pending.isEmpty()) {
+            final CtType<?> type = pending.poll();
+            final List<CtTypeReference<?>> supertypes = new ArrayList<>(type.getSuperInterfaces());
+            if (type.getSuperclass() != null) {
+                supertypes.add(type.getSuperclass());
+            }
+            if (type.getDeclaringType() != null) {
+                supertypes.add(type.getDeclaringType().getReference());
+            }
+            for (final CtTypeReference<?> ref : supertypes) {
+                final CtType<?> declaration = ref.getTypeDeclaration();
+                if ((declaration != null) && resolved.add(declaration)) {
+                    pending.add(declaration);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import groovy.json.JsonSlurper;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.util.*;
+
+public class SpoonPlanTask extends DefaultTask {
+    private SpoonTask spoonTask;
+
+    @Internal
+    public SpoonTask getSpoonTask() {
+        return spoonTask;
+    }
+
+    public void setSpoonTask(final SpoonTask spoonTask) {
+        this.spoonTask = spoonTask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> getCosts() {
+
+        // Only available once the Spoon task has run with profileProcessors
+        final Map<String, Double> result = new HashMap<>();
+        final File file = spoonTask.getReportFile(".json");
+        if (!file.exists()) {
+            return result;
+        }
+        final Map<String, Object> report = (Map<String, Object>)new JsonSlurper().parse(file);
+        final Map<String, Object> statistics = (Map<String, Object>)report.get("statistics");
+        final Map<String, Object> processors = (statistics == null)
+                ? null
+                : (Map<String, Object>)statistics.get("processors");
+        if (processors != null) {
+            for (final Map.Entry<String, Object> entry : processors.entrySet()) {
+                final Number wall = (Number)((Map<String, Object>)entry.getValue()).get("wallMillis");
+                result.put(entry.getKey(), wall.doubleValue());
+            }
+        }
+        return result;
+    }
+
+    private static String render(final Double millis) {
+        return (millis == null) ? "?" : String.format("%.1f ms", millis);
+    }
+
+    @TaskAction
+    public void run() {
+        final ProcessorGraph graph = spoonTask.getGraph();
+        final List<List<String>> stages = spoonTask.getStages();
+        final Map<String, Double> costs = getCosts();
+
+        int width = 0;
+        int count = 0;
+        double sequential = 0;
+        double critical = 0;
+        boolean complete = true;
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < stages.size(); ++i) {
+            final List<String> stage = stages.get(i);
+
+            // Processors of a level may run side by side, so the slowest one bounds the level
+            double slowest = 0;
+            double total = 0;
+            final StringBuilder lines = new StringBuilder();
+            for (final String path : stage) {
+                final Double cost = costs.get(path);
+                if (cost == null) {
+                    complete = false;
+                } else {
+                    slowest = Math.max(slowest, cost);
+                    total += cost;
+                }
+                lines.append(String.format(
+                        "    %s%s%s [%s]%n",
+                        path,
+                        graph.isConcurrent(path) ? " (concurrent)" : "",
+                        graph.isElementLocal(path) ? " (element-local)" : "",
+                        render(cost)
+                ));
+                lines.append(String.format("        consumes %s%n", graph.getConsumes(path)));
+                for (final String item : graph.getProduces(path)) {
+                    lines.append(String.format("        produces %s%n", item));
+                }
+            }
+            builder.append(String.format(
+                    "Level %d: %d processors, %s sequential, %s concurrent%n",
+                    i,
+                    stage.size(),
+                    render(total),
+                    render(slowest)
+            ));
+            builder.append(lines);
+            width = Math.max(width, stage.size());
+            count += stage.size();
+            sequential += total;
+            critical += slowest;
+        }
+
+        builder.append(String.format(
+                "%d processors over %d levels, at most %d per level%n",
+                count,
+                stages.size(),
+                width
+        ));
+        builder.append(String.format(
+                "Estimated processing time: %s sequential, %s with concurrent levels%n",
+                render(sequential),
+                render(critical)
+        ));
+        if (!complete) {
+            builder.append(String.format(
+                    "Some costs are unknown, run %s with profileProcessors = true to measure them%n",
+                    spoonTask.getPath()
+            ));
+        }
+        getLogger().quiet(builder.toString());
+    }
+}
@@ -16,12 +16,14 @@
 
 package eb2501.spoon.gradle;
 
-import eb2501.spoon.SpoonApiFactory;
+import eb2501.spoon.SharedClasspath;
 import org.apache.commons.lang3.StringUtils;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
 import org.gradle.api.plugins.JavaBasePlugin;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.Copy;
@@ -29,15 +31,19 @@ import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.compile.JavaCompile;
 import org.gradle.api.tasks.testing.Test;
 import org.gradle.plugins.ide.idea.IdeaPlugin;
+import org.gradle.plugins.ide.idea.model.IdeaModule;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 public class SpoonPlugin implements Plugin<Project> {
     private static final String TASK_GROUP = "Spoon";
     private static final String TASK_DESCRIPTION =
             "Precompile Java files on the '%s' source set using the Spoon framework";
+    private static final String PLAN_TASK_DESCRIPTION =
+            "Show the Spoon processors planned for the '%s' source set, level by level";
+    private static final String SHARED_CLASSPATH_PROPERTY = "eb2501.spoon.sharedClasspathCleanup";
 
     @Override
     public void apply(final Project project) {
@@ -48,7 +54,17 @@ public class SpoonPlugin implements Plugin<Project> {
         }
 
         final JavaPluginConvention java = project.getConvention().getPlugin(JavaPluginConvention.class);
-        final IdeaPlugin idea = project.getConvention().findPlugin(IdeaPlugin.class);
+
+        // Jars indexed while compiling are shared by every project, but only for the duration of the build,
+        // and so is the index of the processor bundles
+        final ExtraPropertiesExtension extra = project.getRootProject().getExtensions().getExtraProperties();
+        if (!extra.has(SHARED_CLASSPATH_PROPERTY)) {
+            extra.set(SHARED_CLASSPATH_PROPERTY, true);
+            project.getGradle().buildFinished(r -> {
+                SharedClasspath.clear();
+                ClasspathIndex.clear();
+            });
+        }
 
         // Adding spoon & spoonTest configuration
         final Configuration config = project.getConfigurations().create(
@@ -62,8 +78,14 @@ public class SpoonPlugin implements Plugin<Project> {
         );
         configTest.extendsFrom(project.getConfigurations().getByName("testCompile"));
 
-        // Create the spoonCompile/spoonProcessResource tasks for each SourceSet
-        final Map<SourceSet, SpoonTask> mapping = new HashMap<>();
+        // The generated folders of every source set are Idea hints, only resolved when the IDE model gets built
+        final ConfigurableFileCollection generated = project.files();
+        project.getPlugins().withType(IdeaPlugin.class, idea -> {
+            final IdeaModule module = idea.getModel().getModule();
+            module.setGeneratedSourceDirs(new GeneratedSourceDirs(module.getGeneratedSourceDirs(), generated));
+        });
+
+        // Create the spoonCompile/spoonProcessResource tasks for each SourceSet, nothing gets resolved until they run
         java.getSourceSets().all(ss -> {
             final boolean isMain = ss.getName().equals(SourceSet.MAIN_SOURCE_SET_NAME);
             final JavaCompile compileTask = (JavaCompile)project.getTasks().getByName(ss.getCompileJavaTaskName());
@@ -80,106 +102,43 @@ public class SpoonPlugin implements Plugin<Project> {
             );
             compileTask.dependsOn(spoonCompileTask);
 
+            project.getTasks().create(
+                    String.format(Constants.PLAN_TASK_NAME, isMain ? "" : StringUtils.capitalize(ss.getName())),
+                    SpoonPlanTask.class,
+                    t -> {
+                        t.setSpoonTask(spoonCompileTask);
+                        t.setDescription(String.format(PLAN_TASK_DESCRIPTION, ss.getName()));
+                        t.setGroup(TASK_GROUP);
+                    }
+            );
+
             final Copy spoonProcessResourcesTask = project.getTasks().create(
                     String.format(Constants.PROCESS_RESOURCES_TASK_NAME, isMain ? "" : StringUtils.capitalize(ss.getName())),
                     Copy.class,
                     t -> {
-                        for (final File srcDir : ss.getJava().getSrcDirs()) {
-                            t.from(srcDir);
-                        }
-                        t.into(processResourcesTask.getDestinationDir());
+                        t.from((Callable<Set<File>>)() -> ss.getJava().getSrcDirs());
+                        t.into((Callable<File>)processResourcesTask::getDestinationDir);
                         t.include(String.format("**/*%s.java", Constants.RESOURCE_SUFFIX));
                     }
             );
             processResourcesTask.dependsOn(spoonProcessResourcesTask);
 
-            mapping.put(ss, spoonCompileTask);
-        });
-
-        // Doing post-evaluation work
-        project.afterEvaluate(p -> java.getSourceSets().all(ss -> {
-            final SpoonTask spoonCompileTask = mapping.get(ss);
-
             // Add generated files to the list of sources to be compiled
-            ss.getJava().srcDir(spoonCompileTask.getGenerated());
+            ss.getJava().srcDir((Callable<File>)spoonCompileTask::getGenerated);
 
             // Exclude the suffixed files from the compilation process
-            final JavaCompile compileTask = (JavaCompile)project.getTasks().getByName(ss.getCompileJavaTaskName());
             for (final String suffix : Constants.SUFFIXES) {
                 compileTask.exclude(String.format("**/*%s.java", suffix));
             }
 
-            // Add Idea hints
-            if (idea != null) {
-                idea.getModel().getModule().getGeneratedSourceDirs().add(spoonCompileTask.getGenerated());
-            }
-
             // For 'test', we want to set the system properties for SpoonApiBuilder
             if (ss.getName().equals(SourceSet.TEST_SOURCE_SET_NAME)) {
                 final Test testTask = (Test)project.getTasks().getByName("test");
-
-                testTask.doFirst(t -> {
-                    testTask.systemProperty(
-                            SpoonApiFactory.INPUT_SOURCES_KEY,
-                            SpoonApiFactory.renderFiles(spoonCompileTask.getSource().getFiles())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.TEMPLATE_SOURCES_KEY,
-                            SpoonApiFactory.renderFiles(spoonCompileTask.getTemplate().getFiles())
-                    );
-
-                    final File generated = spoonCompileTask.getRealGenerated();
-                    if (generated != null) {
-                        testTask.systemProperty(SpoonApiFactory.OUTPUT_DIRECTORY_KEY, generated.getAbsolutePath());
-                    }
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.LOGGING_LEVEL_KEY,
-                            spoonCompileTask.getLoggingLevel()
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.COMPLIANCE_LEVEL_KEY,
-                            Integer.toString(spoonCompileTask.getComplianceLevel())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.AUTO_IMPORTS_KEY,
-                            Boolean.toString(spoonCompileTask.getAutoImports())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.PRESERVE_LINE_NUMBERS_KEY,
-                            Boolean.toString(spoonCompileTask.getPreserveLineNumbers())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.TABULATION_SIZE_KEY,
-                            Integer.toString(spoonCompileTask.getTabulationSize())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.PRESERVE_COMMENTS_KEY,
-                            Boolean.toString(spoonCompileTask.getPreserveComments())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.SKIP_SELF_CHECKS_KEY,
-                            Boolean.toString(spoonCompileTask.getSkipSelfChecks())
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.ENCODING_KEY,
-                            spoonCompileTask.getEncoding()
-                    );
-
-                    testTask.systemProperty(
-                            SpoonApiFactory.SOURCE_CLASSPATH_KEY,
-                            SpoonApiFactory.renderFiles(spoonCompileTask.getRealClasspath())
-                    );
-                });
+                testTask.getJvmArgumentProviders().add(new SpoonTestArguments(spoonCompileTask));
             }
-        }));
+
+            // Add Idea hints, only resolved along with the IDE model
+            generated.from((Callable<File>)spoonCompileTask::getGenerated);
+        });
     }
 }
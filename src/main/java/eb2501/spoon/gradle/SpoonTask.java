@@ -16,7 +16,8 @@
 
 package eb2501.spoon.gradle;
 
-import eb2501.spoon.SpoonApiBuilder;
+import eb2501.spoon.SpoonApiFactory;
+import eb2501.spoon.TestModel;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.GradleException;
 import org.gradle.api.JavaVersion;
@@ -24,17 +25,24 @@ import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.LogLevel;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.*;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.compile.JavaCompile;
-import spoon.SpoonAPI;
-import spoon.compiler.Environment;
+import org.gradle.api.tasks.incremental.IncrementalTaskInputs;
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerExecutor;
 
+import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
+@CacheableTask
 public class SpoonTask extends DefaultTask {
     SourceSet sourceSet;
     private Cache<FileCollection> source;
@@ -47,9 +55,28 @@ public class SpoonTask extends DefaultTask {
     private int tabulationSize = -1;
     private Boolean preserveComments = true;
     private Boolean skipSelfChecks = false;
+    private boolean reuseModel = true;
+    private boolean pruneProcessors = true;
+    private boolean fuseProcessors = true;
+    private boolean indexAnnotations = true;
+    private boolean sharedClasspath = true;
+    private boolean stubCache = true;
+    private long stubCacheMaxSize = 512L * 1024 * 1024;
+    private int parseThreads = 1;
+    private boolean trace = false;
+    private boolean profileProcessors = false;
+    private Map<String, ProcessorBudget> processorBudgets = new HashMap<>();
+    private boolean failOnBudgetExceeded = false;
+    private long classpathScanNanos;
+    private int printThreads = Runtime.getRuntime().availableProcessors();
+    private int processorThreads = Runtime.getRuntime().availableProcessors();
+    private IsolationMode isolationMode = IsolationMode.NONE;
+    private String workerMaxHeapSize;
+    private List<String> workerJvmArgs = new ArrayList<>();
     private Cache<String> encoding;
     private Cache<String> loggingLevel;
-    private Cache<List<String>> processors;
+    private Cache<ProcessorGraph> graph;
+    private Cache<List<List<String>>> stages;
     private Cache<FileCollection> classpath;
 
     private FileCollection getDefaultSource() {
@@ -123,15 +150,39 @@ public class SpoonTask extends DefaultTask {
         }
     }
 
-    private List<String> getDefaultProcessors() {
+    private ProcessorGraph getDefaultGraph() {
         try {
-            final ProcessorGraph graph = new ProcessorGraph();
-            graph.readClasspath(getClasspath().getFiles().toArray(new File[0]));
-            return graph.getProcessors();
+            final ClasspathIndex index = ClasspathIndex.open(new File(
+                    getProject().getGradle().getGradleUserHomeDir(),
+                    "caches/eb2501.spoon/classpath-index.bin"
+            ));
+            final ProcessorGraph result = new ProcessorGraph(index);
+            final long start = System.nanoTime();
+            result.readClasspath(getClasspath().getFiles().toArray(new File[0]));
+            index.save();
+            classpathScanNanos = System.nanoTime() - start;
+            return result;
+        }
+        catch (final IOException e) {
+            throw new GradleException("IOException thrown", e);
+        }
+    }
+
+    private List<List<String>> getDefaultStages() {
+        if (!pruneProcessors) {
+            return getGraph().getStages(a -> true);
+        }
+
+        // Only keep what's reachable from the annotations actually appearing in the inputs
+        final AnnotationUsage usage = new AnnotationUsage();
+        try {
+            usage.scan(getSource().getFiles(), Charset.forName(getEncoding()));
+            usage.scan(getTemplate().getFiles(), Charset.forName(getEncoding()));
         }
         catch (final IOException e) {
             throw new GradleException("IOException thrown", e);
         }
+        return getGraph().getStages(usage::mayBeUsed);
     }
 
     private FileCollection getDefaultClasspath() {
@@ -151,17 +202,23 @@ public class SpoonTask extends DefaultTask {
         complianceLevel = new Cache<>(this::getDefaultComplianceLevel);
         encoding = new Cache<>(this::getDefaultEncoding);
         loggingLevel = new Cache<>(this::getDefaultLoggingLevel);
-        processors = new Cache<>(this::getDefaultProcessors);
+        graph = new Cache<>(this::getDefaultGraph);
+        stages = new Cache<>(this::getDefaultStages);
         classpath = new Cache<>(this::getDefaultClasspath);
+
+        // Another checkout reusing the manifest would get test JVMs parsing files from this one
+        getOutputs().doNotCacheIf("The test manifest holds absolute paths", t -> getTestManifest() != null);
     }
 
     @SkipWhenEmpty
     @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
     public FileCollection getSource() {
         return source.get();
     }
 
     @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
     public FileCollection getTemplate() {
         return template.get();
     }
@@ -175,6 +232,13 @@ public class SpoonTask extends DefaultTask {
         this.generated.set(generated);
     }
 
+    // Only the test source set hands its settings over to the test JVMs
+    @Optional
+    @OutputFile
+    public File getTestManifest() {
+        return sourceSet.getName().equals(SourceSet.TEST_SOURCE_SET_NAME) ? getTestManifestFile() : null;
+    }
+
     @Input
     public Integer getComplianceLevel() {
         return complianceLevel.get();
@@ -238,6 +302,42 @@ public class SpoonTask extends DefaultTask {
         this.skipSelfChecks = skipSelfChecks;
     }
 
+    @Internal
+    public boolean getReuseModel() {
+        return reuseModel;
+    }
+
+    public void setReuseModel(final boolean reuseModel) {
+        this.reuseModel = reuseModel;
+    }
+
+    @Internal
+    public IsolationMode getIsolationMode() {
+        return isolationMode;
+    }
+
+    public void setIsolationMode(final IsolationMode isolationMode) {
+        this.isolationMode = isolationMode;
+    }
+
+    @Internal
+    public String getWorkerMaxHeapSize() {
+        return workerMaxHeapSize;
+    }
+
+    public void setWorkerMaxHeapSize(final String workerMaxHeapSize) {
+        this.workerMaxHeapSize = workerMaxHeapSize;
+    }
+
+    @Internal
+    public List<String> getWorkerJvmArgs() {
+        return workerJvmArgs;
+    }
+
+    public void setWorkerJvmArgs(final List<String> workerJvmArgs) {
+        this.workerJvmArgs = workerJvmArgs;
+    }
+
     @Input
     public String getEncoding() {
         return encoding.get();
@@ -256,16 +356,213 @@ public class SpoonTask extends DefaultTask {
         this.loggingLevel.set(loggingLevel);
     }
 
+    @Internal
+    public boolean getPruneProcessors() {
+        return pruneProcessors;
+    }
+
+    public void setPruneProcessors(final boolean pruneProcessors) {
+        this.pruneProcessors = pruneProcessors;
+    }
+
+    @Internal
+    public boolean getFuseProcessors() {
+        return fuseProcessors;
+    }
+
+    public void setFuseProcessors(final boolean fuseProcessors) {
+        this.fuseProcessors = fuseProcessors;
+    }
+
+    @Internal
+    public boolean getProfileProcessors() {
+        return profileProcessors;
+    }
+
+    public void setProfileProcessors(final boolean profileProcessors) {
+        this.profileProcessors = profileProcessors;
+    }
+
+    // A budget is either a number of wall milliseconds or a "wall:<ms>,cpu:<ms>,alloc:<bytes>" string
+    @Internal
+    public Map<String, ProcessorBudget> getProcessorBudgets() {
+        return Collections.unmodifiableMap(processorBudgets);
+    }
+
+    public void setProcessorBudgets(final Map<String, ?> processorBudgets) {
+
+        // Build scripts hand over whatever number type they like, or a string
+        this.processorBudgets = new HashMap<>();
+        for (final Map.Entry<String, ?> entry : processorBudgets.entrySet()) {
+            processorBudget(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void processorBudget(final String processor, final long millis) {
+        processorBudgets.put(processor, ProcessorBudget.ofWall(millis));
+    }
+
+    public void processorBudget(final String processor, final Object budget) {
+        if (budget instanceof Number) {
+            processorBudget(processor, ((Number)budget).longValue());
+        } else {
+            processorBudgets.put(processor, ProcessorBudget.parse(budget.toString()));
+        }
+    }
+
+    @Internal
+    public boolean getFailOnBudgetExceeded() {
+        return failOnBudgetExceeded;
+    }
+
+    public void setFailOnBudgetExceeded(final boolean failOnBudgetExceeded) {
+        this.failOnBudgetExceeded = failOnBudgetExceeded;
+    }
+
+    @Internal
+    public boolean getTrace() {
+        return trace;
+    }
+
+    public void setTrace(final boolean trace) {
+        this.trace = trace;
+    }
+
+    @Internal
+    public boolean getIndexAnnotations() {
+        return indexAnnotations;
+    }
+
+    public void setIndexAnnotations(final boolean indexAnnotations) {
+        this.indexAnnotations = indexAnnotations;
+    }
+
+    @Internal
+    public boolean getSharedClasspath() {
+        return sharedClasspath;
+    }
+
+    public void setSharedClasspath(final boolean sharedClasspath) {
+        this.sharedClasspath = sharedClasspath;
+    }
+
+    @Internal
+    public boolean getStubCache() {
+        return stubCache;
+    }
+
+    public void setStubCache(final boolean stubCache) {
+        this.stubCache = stubCache;
+    }
+
+    @Internal
+    public long getStubCacheMaxSize() {
+        return stubCacheMaxSize;
+    }
+
+    public void setStubCacheMaxSize(final long stubCacheMaxSize) {
+        this.stubCacheMaxSize = stubCacheMaxSize;
+    }
+
+    @Internal
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public void setParseThreads(final int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    @Internal
+    public int getProcessorThreads() {
+        return processorThreads;
+    }
+
+    public void setProcessorThreads(final int processorThreads) {
+        this.processorThreads = processorThreads;
+    }
+
+    @Internal
+    public int getPrintThreads() {
+        return printThreads;
+    }
+
+    public void setPrintThreads(final int printThreads) {
+        this.printThreads = printThreads;
+    }
+
     @Input
     public List<String> getProcessors() {
-        return processors.get();
+        final List<String> result = new ArrayList<>();
+        for (final List<String> stage : stages.get()) {
+            result.addAll(stage);
+        }
+        return result;
+    }
+
+    // Processors of a stage only depend on processors of the previous stages
+    @Internal
+    public List<List<String>> getStages() {
+        return stages.get();
+    }
+
+    ProcessorGraph getGraph() {
+        return graph.get();
     }
 
-    List<String> getRealProcessors() {
+    Map<String, List<String>> getDependencies(final List<List<String>> stages) {
+        final Set<String> planned = new HashSet<>();
+        for (final List<String> stage : stages) {
+            planned.addAll(stage);
+        }
+        final Map<String, List<String>> result = new HashMap<>();
+        for (final String path : planned) {
+            final List<String> producers = new ArrayList<>(getGraph().getProducers(path));
+            producers.retainAll(planned);
+            result.put(path, producers);
+        }
+        return result;
+    }
+
+    Set<String> getConcurrent(final List<List<String>> stages) {
+        final Set<String> result = new HashSet<>();
+        for (final List<String> stage : stages) {
+            for (final String path : stage) {
+                if (getGraph().isConcurrent(path)) {
+                    result.add(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    Map<String, String> getConsumes(final List<List<String>> stages) {
+        final Map<String, String> result = new HashMap<>();
+        for (final List<String> stage : stages) {
+            for (final String path : stage) {
+                result.put(path, getGraph().getConsumes(path));
+            }
+        }
+        return result;
+    }
+
+    Set<String> getElementLocal(final List<List<String>> stages) {
+        final Set<String> result = new HashSet<>();
+        for (final List<String> stage : stages) {
+            for (final String path : stage) {
+                if (getGraph().isElementLocal(path)) {
+                    result.add(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    List<List<String>> getRealStages() {
         if (mode == SpoonTaskMode.GUI_BEFORE) {
             return Collections.emptyList();
         } else {
-            return getProcessors();
+            return getStages();
         }
     }
 
@@ -283,7 +580,7 @@ public class SpoonTask extends DefaultTask {
                 .collect(Collectors.toList());
     }
 
-    @CompileClasspath
+    @Classpath
     public FileCollection getClasspath() {
         return classpath.get();
     }
@@ -292,50 +589,215 @@ public class SpoonTask extends DefaultTask {
         this.classpath.set(classpath);
     }
 
-    @TaskAction
-    public void run() {
-
-        // Build the SpoonApi
-        final SpoonApiBuilder builder = new SpoonApiBuilder()
-                .withLoggingLevel(getLoggingLevel())
-                .withComplianceLevel(getComplianceLevel())
-                .withAutoImports(getAutoImports())
-                .withPreserveLineNumbers(getPreserveLineNumbers())
-                .withTabulationSize(getTabulationSize())
-                .withPreserveComments(getPreserveComments())
-                .withSkipSelfChecks(getSkipSelfChecks())
-                .withEncoding(Charset.forName(getEncoding()))
-                .withInputSources(new ArrayList<>(getSource().getFiles()))
-                .withOutputDirectory(getRealGenerated())
-                .withProcessorNames(getRealProcessors())
-                .withSourceClasspath(getRealClasspath());
-
-        final Set<File> templateFiles = this.template.get().getFiles();
-        if (!templateFiles.isEmpty()) {
-            builder.withTemplateSources(new ArrayList<>(templateFiles));
+    @Inject
+    protected WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static List<File> getWorkerClasspath() {
+
+        // Everything the plugin has been loaded with, short of Gradle itself
+        final List<File> result = new ArrayList<>();
+        ClassLoader loader = SpoonWorker.class.getClassLoader();
+        while (loader instanceof URLClassLoader) {
+            for (final URL url : ((URLClassLoader)loader).getURLs()) {
+                try {
+                    result.add(new File(url.toURI()));
+                }
+                catch (final URISyntaxException e) {
+                    throw new GradleException("URISyntaxException thrown", e);
+                }
+            }
+            loader = loader.getParent();
         }
+        return result;
+    }
+
+    File getSnapshotDir() {
+        return new File(getProject().getBuildDir(), "spoon/snapshot/" + sourceSet.getName());
+    }
+
+    List<String> getModelSettings() {
+        return Arrays.asList(
+                "complianceLevel=" + getComplianceLevel(),
+                "autoImports=" + getAutoImports(),
+                "preserveLineNumbers=" + getPreserveLineNumbers(),
+                "tabulationSize=" + getTabulationSize(),
+                "preserveComments=" + getPreserveComments(),
+                "skipSelfChecks=" + getSkipSelfChecks(),
+                "encoding=" + getEncoding()
+        );
+    }
+
+    File getReportFile(final String extension) {
+        return new File(getProject().getBuildDir(), String.format("reports/spoon/%s%s", getName(), extension));
+    }
 
-        if (mode != SpoonTaskMode.GUI_BEFORE) {
-            builder.withProcessorInstances(
-                    new TypeProcessor(),
-                    new TypeRefProcessor()
-            );
+    File getTestManifestFile() {
+        return new File(getTemporaryDir(), "test-manifest.bin");
+    }
+
+    File getTestModelFile() {
+        return new File(getTemporaryDir(), "test-model.bin");
+    }
+
+    Map<String, String> getTestProperties() {
+        final Map<String, String> result = new HashMap<>();
+        result.put(SpoonApiFactory.INPUT_SOURCES_KEY, SpoonApiFactory.renderFiles(getSource().getFiles()));
+        result.put(SpoonApiFactory.TEMPLATE_SOURCES_KEY, SpoonApiFactory.renderFiles(getTemplate().getFiles()));
+        final File generated = getRealGenerated();
+        if (generated != null) {
+            result.put(SpoonApiFactory.OUTPUT_DIRECTORY_KEY, generated.getAbsolutePath());
         }
+        result.put(SpoonApiFactory.LOGGING_LEVEL_KEY, getLoggingLevel());
+        result.put(SpoonApiFactory.COMPLIANCE_LEVEL_KEY, Integer.toString(getComplianceLevel()));
+        result.put(SpoonApiFactory.AUTO_IMPORTS_KEY, Boolean.toString(getAutoImports()));
+        result.put(SpoonApiFactory.PRESERVE_LINE_NUMBERS_KEY, Boolean.toString(getPreserveLineNumbers()));
+        result.put(SpoonApiFactory.TABULATION_SIZE_KEY, Integer.toString(getTabulationSize()));
+        result.put(SpoonApiFactory.PRESERVE_COMMENTS_KEY, Boolean.toString(getPreserveComments()));
+        result.put(SpoonApiFactory.SKIP_SELF_CHECKS_KEY, Boolean.toString(getSkipSelfChecks()));
+        result.put(SpoonApiFactory.ENCODING_KEY, getEncoding());
+        result.put(SpoonApiFactory.SOURCE_CLASSPATH_KEY, SpoonApiFactory.renderFiles(getRealClasspath()));
+        result.put(SpoonApiFactory.MODEL_FILE_KEY, getTestModelFile().getAbsolutePath());
+        return result;
+    }
 
-        final SpoonAPI spoon = builder.build();
+    File getStubCacheDir() {
+        return new File(getProject().getGradle().getGradleUserHomeDir(), "caches/eb2501.spoon/stubs");
+    }
 
-        // Run it!
-        spoon.run();
-        final Environment environment = spoon.getEnvironment();
-        if (environment.getErrorCount() > 0) {
-            throw new GradleException(String.format(
-                    "Spoon processing generated %d errors!",
-                    environment.getErrorCount()
-            ));
-        } else {
-            if (getMode() != SpoonTaskMode.NO_GUI) {
-                SpoonGui.show(spoon.getFactory());
+    File getStateFile() {
+        return new File(getTemporaryDir(), "incremental.bin");
+    }
+
+    @TaskAction
+    public void run(final IncrementalTaskInputs inputs) {
+
+        // The test JVMs get the settings from there, the long path lists not fitting a command line
+        final File manifest = getTestManifest();
+        if (manifest != null) {
+            try {
+                TestModel.writeManifest(manifest, getTestProperties());
+            }
+            catch (final IOException e) {
+                throw new GradleException("IOException thrown", e);
+            }
+        }
+
+        // Figure out what changed since the last execution
+        final Set<File> templateFiles = getTemplate().getFiles();
+        final Set<File> changed = new HashSet<>();
+        final Set<File> removed = new HashSet<>();
+        boolean incremental = inputs.isIncremental() && (mode == SpoonTaskMode.NO_GUI);
+        if (incremental) {
+            inputs.outOfDate(d -> changed.add(d.getFile().getAbsoluteFile()));
+            inputs.removed(d -> removed.add(d.getFile().getAbsoluteFile()));
+            for (final File file : templateFiles) {
+                if (changed.contains(file.getAbsoluteFile()) || removed.contains(file.getAbsoluteFile())) {
+                    incremental = false;
+                    break;
+                }
+            }
+
+            // Anything else changing, like a library or a processor bundle on the classpath, calls for a full run
+            final Set<File> sources = new HashSet<>();
+            for (final File file : getSource().getFiles()) {
+                sources.add(file.getAbsoluteFile());
             }
+            for (final File file : changed) {
+                if (!sources.contains(file)) {
+                    incremental = false;
+                    break;
+                }
+            }
+
+            // Removed files are no longer part of the inputs, so only the last execution tells sources apart
+            // from templates and libraries, the state's units being the only removals it can deal with
+            if (incremental && !removed.isEmpty()) {
+                final IncrementalState previous = IncrementalState.load(getStateFile());
+                final Set<File> units = (previous == null) ? Collections.emptySet() : previous.getSources();
+                for (final File file : removed) {
+                    if (file.getName().endsWith(Constants.TEMPLATE_SUFFIX + ".java") || !units.contains(file)) {
+                        incremental = false;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Gather everything the work needs, as it may be carried out in another process
+        final SpoonWorkSpec spec = new SpoonWorkSpec();
+        spec.name = getPath();
+        spec.mode = mode;
+        spec.loggingLevel = getLoggingLevel();
+        spec.complianceLevel = getComplianceLevel();
+        spec.autoImports = getAutoImports();
+        spec.preserveLineNumbers = getPreserveLineNumbers();
+        spec.tabulationSize = getTabulationSize();
+        spec.preserveComments = getPreserveComments();
+        spec.skipSelfChecks = getSkipSelfChecks();
+        spec.encoding = getEncoding();
+        spec.modelSettings = getModelSettings();
+        spec.sources = new ArrayList<>(getSource().getFiles());
+        spec.templates = new ArrayList<>(templateFiles);
+        spec.classpath = getRealClasspath();
+
+        // The build only clears the registry of its own JVM, which isolated workers don't see
+        spec.sharedClasspath = sharedClasspath && (isolationMode == IsolationMode.NONE);
+        spec.stubCacheDir = stubCache ? getStubCacheDir() : null;
+        spec.stubCacheMaxSize = stubCacheMaxSize;
+        spec.parseThreads = parseThreads;
+        spec.stages = getRealStages();
+        spec.dependencies = getDependencies(spec.stages);
+        spec.concurrent = getConcurrent(spec.stages);
+        spec.elementLocal = getElementLocal(spec.stages);
+        spec.indexAnnotations = indexAnnotations;
+        spec.consumes = indexAnnotations ? getConsumes(spec.stages) : Collections.emptyMap();
+        spec.processorThreads = processorThreads;
+        spec.fuseProcessors = fuseProcessors;
+        spec.profileProcessors = profileProcessors || !processorBudgets.isEmpty();
+        spec.processorBudgets = new HashMap<>(processorBudgets);
+        spec.failOnBudgetExceeded = failOnBudgetExceeded;
+        spec.generated = getRealGenerated();
+        spec.printThreads = printThreads;
+        spec.stagingDir = new File(getTemporaryDir(), "staging");
+        spec.incremental = incremental;
+        spec.changed = changed;
+        spec.removed = removed;
+        spec.stateFile = getStateFile();
+        spec.reuseModel = reuseModel;
+        spec.snapshotDir = getSnapshotDir();
+        spec.classpathScanNanos = classpathScanNanos;
+        spec.projectDir = getProject().getProjectDir();
+        spec.reportFile = getReportFile(".json");
+        spec.traceFile = trace ? getReportFile("-trace.json") : null;
+
+        // The test JVMs pick up the model from there rather than parsing everything again
+        if (sourceSet.getName().equals(SourceSet.TEST_SOURCE_SET_NAME) && (mode == SpoonTaskMode.NO_GUI)) {
+            spec.testProperties = getTestProperties();
+            spec.testModelFile = getTestModelFile();
         }
+
+        // The GUI has to stay within the daemon
+        if (mode != SpoonTaskMode.NO_GUI) {
+            new SpoonWorker(spec).run();
+            return;
+        }
+
+        // Not waiting for the result lets other tasks run in the meantime
+        getWorkerExecutor().submit(SpoonWorker.class, config -> {
+            config.setIsolationMode(isolationMode);
+            config.setDisplayName(String.format("Spoon processing for %s", getPath()));
+            config.setParams(spec);
+            if (isolationMode == IsolationMode.PROCESS) {
+                config.classpath(getWorkerClasspath());
+                config.forkOptions(options -> {
+                    if (workerMaxHeapSize != null) {
+                        options.setMaxHeapSize(workerMaxHeapSize);
+                    }
+                    options.jvmArgs(workerJvmArgs);
+                });
+            }
+        });
     }
 }
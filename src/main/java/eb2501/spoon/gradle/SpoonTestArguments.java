@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import eb2501.spoon.SpoonApiFactory;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.*;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import java.io.File;
+import java.util.*;
+
+public class SpoonTestArguments implements CommandLineArgumentProvider {
+    private final SpoonTask task;
+
+    public SpoonTestArguments(final SpoonTask task) {
+        this.task = task;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getSource() {
+        return task.getSource();
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getTemplate() {
+        return task.getTemplate();
+    }
+
+    @Classpath
+    public FileCollection getClasspath() {
+        return task.getClasspath();
+    }
+
+    @Input
+    public List<String> getSettings() {
+        return task.getModelSettings();
+    }
+
+    @Input
+    public String getLoggingLevel() {
+        return task.getLoggingLevel();
+    }
+
+    private static String define(final String key, final String value) {
+        return String.format("-D%s=%s", key, value);
+    }
+
+    @Override
+    public Iterable<String> asArguments() {
+
+        // Written by the task, unless it got skipped for lack of sources, leaving the settings to go one by one
+        final File manifest = task.getTestManifestFile();
+        if (manifest.exists()) {
+            return Collections.singletonList(define(SpoonApiFactory.MANIFEST_KEY, manifest.getAbsolutePath()));
+        }
+        final List<String> result = new ArrayList<>();
+        for (final Map.Entry<String, String> entry : new TreeMap<>(task.getTestProperties()).entrySet()) {
+            if (!entry.getKey().equals(SpoonApiFactory.MODEL_FILE_KEY)) {
+                result.add(define(entry.getKey(), entry.getValue()));
+            }
+        }
+        return result;
+    }
+}
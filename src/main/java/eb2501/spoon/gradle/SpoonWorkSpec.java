@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class SpoonWorkSpec implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    String name;
+    SpoonTaskMode mode;
+
+    // Compiler settings
+    String loggingLevel;
+    int complianceLevel;
+    boolean autoImports;
+    boolean preserveLineNumbers;
+    int tabulationSize;
+    boolean preserveComments;
+    boolean skipSelfChecks;
+    String encoding;
+    List<String> modelSettings;
+
+    // Inputs & outputs
+    List<File> sources;
+    List<File> templates;
+    List<File> classpath;
+    boolean sharedClasspath;
+    File stubCacheDir;
+    long stubCacheMaxSize;
+    int parseThreads;
+    List<List<String>> stages;
+    Map<String, List<String>> dependencies;
+    Set<String> concurrent;
+    Set<String> elementLocal;
+    boolean indexAnnotations;
+    Map<String, String> consumes;
+    int processorThreads;
+    boolean fuseProcessors;
+    boolean profileProcessors;
+    Map<String, ProcessorBudget> processorBudgets;
+    boolean failOnBudgetExceeded;
+    File generated;
+    int printThreads;
+    File stagingDir;
+
+    // Incremental support
+    boolean incremental;
+    Set<File> changed;
+    Set<File> removed;
+    File stateFile;
+    boolean reuseModel;
+    File snapshotDir;
+
+    // Reporting
+    File projectDir;
+    long classpathScanNanos;
+    File reportFile;
+    File traceFile;
+
+    // Model handed over to the test JVMs
+    Map<String, String> testProperties;
+    File testModelFile;
+}
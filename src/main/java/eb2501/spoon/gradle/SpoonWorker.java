@@ -0,0 +1,380 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import eb2501.spoon.SharedClasspath;
+import eb2501.spoon.SpoonApiBuilder;
+import eb2501.spoon.StubCache;
+import eb2501.spoon.TestModel;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import spoon.SpoonAPI;
+import spoon.compiler.Environment;
+import spoon.processing.Processor;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class SpoonWorker implements Runnable {
+    private static final Logger LOGGER = Logging.getLogger(SpoonWorker.class);
+
+    private final SpoonWorkSpec spec;
+
+    @Inject
+    public SpoonWorker(final SpoonWorkSpec spec) {
+        this.spec = spec;
+    }
+
+    private static void checkErrors(final Environment environment) {
+        if (environment.getErrorCount() > 0) {
+            throw new GradleException(String.format(
+                    "Spoon processing generated %d errors!",
+                    environment.getErrorCount()
+            ));
+        }
+    }
+
+    private SpoonApiBuilder createBuilder(final Factory reused) {
+        return ((reused == null) ? new SpoonApiBuilder() : new SpoonApiBuilder(reused))
+                .withLoggingLevel(spec.loggingLevel)
+                .withComplianceLevel(spec.complianceLevel)
+                .withAutoImports(spec.autoImports)
+                .withPreserveLineNumbers(spec.preserveLineNumbers)
+                .withTabulationSize(spec.tabulationSize)
+                .withPreserveComments(spec.preserveComments)
+                .withSkipSelfChecks(spec.skipSelfChecks)
+                .withEncoding(Charset.forName(spec.encoding))
+                .withOutputDirectory(spec.generated)
+                .withSourceClasspath(spec.classpath)
+                .withSharedClasspath(spec.sharedClasspath)
+                .withStubCache((spec.stubCacheDir == null) ? null : StubCache.open(spec.stubCacheDir, spec.stubCacheMaxSize))
+                .withParseThreads(spec.parseThreads);
+    }
+
+    @Override
+    public void run() {
+
+        // The classpath got scanned by the task, possibly at configuration time or in another JVM,
+        // so it only has a duration and no place on the timeline
+        final PhaseReport report = new PhaseReport(spec.name, System.nanoTime());
+        if (spec.classpathScanNanos > 0) {
+            report.statistic("classpathScanMillis", spec.classpathScanNanos / 1000000.0);
+        }
+
+        // Whether the work happened in the daemon or in a worker process of its own
+        final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        final Map<String, Object> jvm = new LinkedHashMap<>();
+        jvm.put("name", runtime.getName());
+        jvm.put("arguments", runtime.getInputArguments());
+        report.statistic("jvm", jvm);
+
+        IncrementalState previous = spec.incremental ? IncrementalState.load(spec.stateFile) : null;
+        if ((previous != null) && !previous.matchesFingerprint(spec.generated)) {
+            LOGGER.info("Spoon output for {} has changed since the last execution", spec.name);
+            previous = null;
+        }
+        if ((previous != null) && !previous.getGenerated().isEmpty()) {
+
+            // Processors created types last time, and there's no telling which compilation unit triggered them
+            LOGGER.info("Spoon processors created types during the last execution of {}", spec.name);
+            previous = null;
+        }
+
+        // Check whether the model of the last execution can be reused
+        final ModelSnapshot snapshot;
+        final Factory reused;
+        if (spec.reuseModel && (spec.mode == SpoonTaskMode.NO_GUI)) {
+            try {
+                snapshot = new ModelSnapshot(
+                        spec.snapshotDir,
+                        spec.modelSettings,
+                        spec.classpath,
+                        spec.sources,
+                        spec.templates
+                );
+            }
+            catch (final IOException e) {
+                throw new GradleException("IOException thrown", e);
+            }
+            reused = report.time("snapshotLoad", snapshot::load);
+        } else {
+            snapshot = null;
+            reused = null;
+        }
+
+        // Start from the model of the last execution when none of the inputs changed since
+        final long heap = PhaseReport.getUsedHeap();
+        SpoonAPI spoon = null;
+        boolean built = true;
+        if (reused != null) {
+            spoon = createBuilder(reused).build();
+            built = false;
+            LOGGER.info("Spoon reused the whole model of the last execution for {}", spec.name);
+        }
+        if (snapshot != null) {
+            report.statistic("snapshotReused", !built);
+        }
+
+        // Otherwise build the whole model
+        if (spoon == null) {
+            final SpoonApiBuilder builder = createBuilder(null).withInputSources(spec.sources);
+            if (!spec.templates.isEmpty()) {
+                builder.withTemplateSources(spec.templates);
+            }
+            spoon = builder.build();
+            report.time("buildModel", spoon::buildModel);
+            LOGGER.info("Spoon built {} compilation units for {}", spec.sources.size(), spec.name);
+        }
+        final Environment environment = spoon.getEnvironment();
+        final Factory factory = spoon.getFactory();
+        checkErrors(environment);
+        if (built && (snapshot != null)) {
+            report.time("snapshotSave", () -> {
+                try {
+                    report.statistic("snapshotBytes", snapshot.save(factory));
+                }
+                catch (final IOException e) {
+                    throw new GradleException("IOException thrown", e);
+                }
+            });
+        }
+
+        // Before processing, the test JVMs building their own models from the same sources
+        if (spec.testModelFile != null) {
+            final List<File> inputs = new ArrayList<>(spec.sources);
+            inputs.addAll(spec.templates);
+            report.time("testModelSave", () -> {
+                try {
+                    TestModel.writeModel(
+                            spec.testModelFile,
+                            TestModel.getSettings(spec.testProperties::get),
+                            inputs,
+                            factory
+                    );
+                }
+                catch (final IOException e) {
+                    throw new GradleException("IOException thrown", e);
+                }
+            });
+        }
+
+        // Without forcing a collection, so only an estimate of what the model retains
+        report.statistic("estimatedModelBytes", Math.max(0, PhaseReport.getUsedHeap() - heap));
+        report.statistic("sharedClasspathJars", SharedClasspath.size());
+        report.statistic("parseShards", SpoonApiBuilder.getParseShards(spoon));
+        report.time("statistics", () -> report.collect(factory));
+
+        // Group the input types by compilation unit, recording their dependencies
+        final long dependencies = System.nanoTime();
+        final Set<File> sources = spec.sources.stream()
+                .map(File::getAbsoluteFile)
+                .collect(Collectors.toSet());
+        final Map<File, List<CtType<?>>> units = new HashMap<>();
+        for (final CtType<?> type : factory.getModel().getAllTypes()) {
+            final File file = type.getPosition().getFile();
+            if ((file != null) && sources.contains(file.getAbsoluteFile())) {
+                units.computeIfAbsent(file.getAbsoluteFile(), f -> new ArrayList<>()).add(type);
+            }
+        }
+        final IncrementalState state = new IncrementalState();
+        for (final Map.Entry<File, List<CtType<?>>> entry : units.entrySet()) {
+            state.collect(entry.getKey(), entry.getValue());
+        }
+
+        // Only the modified compilation units and the ones depending on them need to be reprocessed
+        final Set<File> affected;
+        if (previous == null) {
+            affected = units.keySet();
+            LOGGER.info("Spoon is processing all {} compilation units for {}", affected.size(), spec.name);
+        } else {
+            affected = state.getAffected(previous, spec.changed, spec.removed);
+            LOGGER.info(
+                    "Spoon is processing {} out of {} compilation units for {}",
+                    affected.size(),
+                    units.size(),
+                    spec.name
+            );
+        }
+
+        report.record("dependencies", dependencies, System.nanoTime() - dependencies);
+        report.statistic("sources", units.size());
+        report.statistic("affected", affected.size());
+        final Path project = spec.projectDir.toPath().toAbsolutePath();
+        report.statistic("affectedUnits", affected.stream()
+                .map(f -> project.relativize(f.toPath()).toString().replace(File.separatorChar, '/'))
+                .sorted()
+                .collect(Collectors.toList()));
+
+        // Process the affected types, and the templates which Spoon's own output used to include
+        final Set<File> templates = spec.templates.stream()
+                .map(File::getAbsoluteFile)
+                .collect(Collectors.toSet());
+        final List<CtType<?>> merged = new ArrayList<>();
+        for (final CtType<?> type : factory.getModel().getAllTypes()) {
+            final File file = type.getPosition().getFile();
+            if (!type.isShadow() && (file != null) && templates.contains(file.getAbsoluteFile())) {
+                merged.add(type);
+            }
+        }
+        final List<CtType<?>> types = new ArrayList<>();
+        for (final File file : affected) {
+            types.addAll(units.get(file));
+        }
+        types.addAll(merged);
+        final long processing = System.nanoTime();
+        final List<String> exceeded = new ArrayList<>();
+        if (spec.mode != SpoonTaskMode.GUI_BEFORE) {
+            final ProcessingEngine engine = new ProcessingEngine(factory, spec.fuseProcessors);
+            if (spec.profileProcessors) {
+                engine.enableProfiling();
+            }
+            engine.enableConcurrency(spec.concurrent, spec.elementLocal, spec.dependencies, spec.processorThreads);
+
+            // Processors get their consumed annotation's elements, the index following whatever they annotate
+            if (spec.indexAnnotations && !spec.consumes.isEmpty()) {
+                final AnnotationIndex index = report.time("annotationIndex", () -> AnnotationIndex.build(factory));
+                environment.setModelChangeListener(index);
+                engine.enableIndex(index, spec.consumes);
+            }
+            final List<List<Processor<?>>> stages = engine.instantiate(spec.stages);
+
+            // The built-in renaming comes last, once the bundles are done with the original names
+            stages.add(Arrays.asList(new TypeProcessor(), new TypeRefProcessor()));
+            if (previous == null) {
+                engine.process(stages, Collections.singletonList(factory.Package().getRootPackage()));
+            } else {
+                engine.process(stages, types);
+            }
+
+            // Check each processor against its budget, if any
+            final Map<String, Object> profiles = new LinkedHashMap<>();
+            for (final ProcessorStats stat : engine.getStats()) {
+                LOGGER.info("Spoon processor {} for {}", stat, spec.name);
+                profiles.put(stat.getName(), stat.toMap());
+                final ProcessorBudget budget = spec.processorBudgets.get(stat.getName());
+                if (budget != null) {
+                    for (final String message : budget.check(stat)) {
+                        LOGGER.warn("{} for {}", message, spec.name);
+                        exceeded.add(message);
+                    }
+                }
+            }
+            if (!profiles.isEmpty()) {
+                report.statistic("processors", profiles);
+            }
+        }
+        report.record("processing", processing, System.nanoTime() - processing);
+        checkErrors(environment);
+
+        // Types created by processors belong to no input file, but get printed all the same
+        final List<CtType<?>> created = new ArrayList<>();
+        for (final CtType<?> type : factory.getModel().getAllTypes()) {
+            final File file = type.getPosition().getFile();
+            if (!type.isShadow()
+                    && ((file == null)
+                    || (!sources.contains(file.getAbsoluteFile()) && !templates.contains(file.getAbsoluteFile())))) {
+                created.add(type);
+            }
+        }
+        types.addAll(created);
+        report.statistic("created", created.size());
+
+        // Print the affected types, keeping track of what each compilation unit generated
+        if (spec.generated != null) {
+            final OutputStage output = new OutputStage(factory, spec.generated, spec.stagingDir, spec.printThreads);
+            report.time("printing", () -> output.print(types));
+            final Set<String> outputs = new HashSet<>();
+            final List<String> createdOutputs = new ArrayList<>();
+            for (final CtType<?> type : created) {
+                createdOutputs.add(OutputStage.getOutput(type));
+            }
+            state.setGenerated(createdOutputs);
+            outputs.addAll(createdOutputs);
+            for (final CtType<?> type : merged) {
+                outputs.add(OutputStage.getOutput(type));
+            }
+            for (final File file : units.keySet()) {
+                if (affected.contains(file)) {
+                    final List<String> generated = new ArrayList<>();
+                    for (final CtType<?> type : units.get(file)) {
+                        generated.add(OutputStage.getOutput(type));
+                    }
+                    state.setOutputs(file, generated);
+                } else {
+                    state.setOutputs(file, previous.getOutputs(file));
+                }
+                outputs.addAll(state.getOutputs(file));
+            }
+
+            // The new tree replaces the old one, without whatever isn't generated anymore like the output of removed files
+            final int pruned = report.time("publishing", () -> output.publish(outputs));
+            report.statistic("written", output.getWritten());
+            report.statistic("pruned", pruned);
+            LOGGER.info(
+                    "Spoon wrote {} out of {} files and removed {} stale ones for {}",
+                    output.getWritten(),
+                    types.size(),
+                    pruned,
+                    spec.name
+            );
+            report.time("stateSave", () -> {
+                try {
+                    state.updateFingerprint(spec.generated);
+                    state.save(spec.stateFile);
+                }
+                catch (final IOException e) {
+                    throw new GradleException("IOException thrown", e);
+                }
+            });
+        } else {
+
+            // Nothing got generated, so the next execution can't be incremental
+            spec.stateFile.delete();
+        }
+
+        // Write down where the time went
+        try {
+            report.writeReport(spec.reportFile);
+            if (spec.traceFile != null) {
+                report.writeTrace(spec.traceFile);
+            }
+        }
+        catch (final IOException e) {
+            throw new GradleException("IOException thrown", e);
+        }
+        for (final PhaseReport.Phase phase : report.getPhases()) {
+            LOGGER.info("Spoon spent {} ms in {} for {}", phase.duration / 1000000, phase.name, spec.name);
+        }
+        if (spec.failOnBudgetExceeded && !exceeded.isEmpty()) {
+            throw new GradleException(String.join(System.lineSeparator(), exceeded));
+        }
+
+        if (spec.mode != SpoonTaskMode.NO_GUI) {
+            SpoonGui.show(factory);
+        }
+    }
+}
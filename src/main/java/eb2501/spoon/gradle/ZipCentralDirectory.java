@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ZipCentralDirectory {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int ENTRY_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private ZipCentralDirectory() {
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long position, final int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Reads a single entry, only ever looking at the end of central directory record, the central
+    // directory and the entry itself. Returns null if there is no such entry.
+    public static byte[] readEntry(final File file, final String name) throws IOException {
+        final byte[] target = name.getBytes(StandardCharsets.UTF_8);
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            // Locate the end of central directory record, which may be followed by a comment
+            final long size = channel.size();
+            final int tailSize = (int)Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+            final ByteBuffer tail = read(channel, size - tailSize, tailSize);
+            int end = -1;
+            for (int i = tailSize - END_SIZE; i >= 0; --i) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new IOException(String.format("File '%s' isn't a zip file", file));
+            }
+            final int entries = tail.getShort(end + 10) & 0xffff;
+            final long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+            final long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+            if ((entries == 0xffff) || (directorySize == 0xffffffffL) || (directoryOffset == 0xffffffffL)) {
+                return readEntryFallback(file, name);
+            }
+
+            // Walk the central directory, comparing the raw names
+            final ByteBuffer directory = read(channel, directoryOffset, (int)directorySize);
+            int position = 0;
+            for (int i = 0; i < entries; ++i) {
+                if ((position + ENTRY_SIZE > directory.limit()) || (directory.getInt(position) != ENTRY_SIGNATURE)) {
+
+                    // Probably some data prepended to the archive, leave it to the JDK
+                    return readEntryFallback(file, name);
+                }
+                final int method = directory.getShort(position + 10) & 0xffff;
+                final long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+                final long uncompressedSize = directory.getInt(position + 24) & 0xffffffffL;
+                final int nameSize = directory.getShort(position + 28) & 0xffff;
+                final int extraSize = directory.getShort(position + 30) & 0xffff;
+                final int commentSize = directory.getShort(position + 32) & 0xffff;
+                final long localOffset = directory.getInt(position + 42) & 0xffffffffL;
+                if ((nameSize == target.length) && matches(directory, position + ENTRY_SIZE, target)) {
+                    if ((method != STORED) && (method != DEFLATED)) {
+                        return readEntryFallback(file, name);
+                    }
+                    return readData(channel, localOffset, method, (int)compressedSize, (int)uncompressedSize);
+                }
+                position += ENTRY_SIZE + nameSize + extraSize + commentSize;
+            }
+            return null;
+        }
+    }
+
+    private static boolean matches(final ByteBuffer buffer, final int position, final byte[] target) {
+        for (int i = 0; i < target.length; ++i) {
+            if (buffer.get(position + i) != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readData(
+            final FileChannel channel,
+            final long localOffset,
+            final int method,
+            final int compressedSize,
+            final int uncompressedSize
+    ) throws IOException {
+        final ByteBuffer local = read(channel, localOffset, LOCAL_SIZE);
+        if (local.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("Invalid local file header");
+        }
+        final int nameSize = local.getShort(26) & 0xffff;
+        final int extraSize = local.getShort(28) & 0xffff;
+        final ByteBuffer data = read(channel, localOffset + LOCAL_SIZE + nameSize + extraSize, compressedSize);
+        if (method == STORED) {
+            return data.array();
+        }
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data.array());
+            final byte[] result = new byte[uncompressedSize];
+            int count = 0;
+            while (count < uncompressedSize) {
+                final int inflated = inflater.inflate(result, count, uncompressedSize - count);
+                if ((inflated == 0) && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated deflated entry");
+                }
+                count += inflated;
+            }
+            return result;
+        }
+        catch (final DataFormatException e) {
+            throw new IOException(e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readEntryFallback(final File file, final String name) throws IOException {
+        try (final ZipFile zip = new ZipFile(file)) {
+            final ZipEntry entry = zip.getEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            try (final InputStream istream = zip.getInputStream(entry)) {
+                return istream.readAllBytes();
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class PerformanceTest {
+    private static final int BUNDLES = 5;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Properties results = new Properties() {
+
+        // Keep the report sorted, so that it can be diffed against the baseline
+        @Override
+        public synchronized Enumeration<Object> keys() {
+            return Collections.enumeration(new TreeSet<>(keySet()));
+        }
+    };
+
+    private static Properties loadBaseline(final File file) throws IOException {
+        final Properties result = new Properties();
+        if (file.exists()) {
+            try (final InputStream istream = new FileInputStream(file)) {
+                result.load(istream);
+            }
+        }
+        return result;
+    }
+
+    private void measure(final File project, final String key) throws IOException {
+        final long start = System.nanoTime();
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(project)
+                .withArguments("spoonCompile", "-q")
+                .build();
+        final long millis = (System.nanoTime() - start) / 1000000;
+        final String heap = FileUtils.readFileToString(new File(project, "peak-heap.txt"), StandardCharsets.UTF_8);
+        results.setProperty(key + ".millis", Long.toString(millis));
+        results.setProperty(key + ".heap", heap.trim());
+    }
+
+    private void run(final int files) throws IOException {
+        final File project = new File(tempFolder.getRoot(), "synthetic" + files);
+        final SyntheticProject generator = new SyntheticProject(files, BUNDLES);
+        generator.generate(project);
+
+        // Clean, then nothing changed, then a single file touched in the middle of the reference chain
+        measure(project, files + ".clean");
+        measure(project, files + ".noop");
+        final File source = generator.getSource(project, files / 2);
+        FileUtils.writeStringToFile(
+                source,
+                FileUtils.readFileToString(source, StandardCharsets.UTF_8) + String.format("// Changed%n"),
+                StandardCharsets.UTF_8
+        );
+        measure(project, files + ".change");
+    }
+
+    @Test
+    public void testPerformance() throws IOException {
+        for (final String size : System.getProperty("performance.sizes", "1000").split(",")) {
+            run(Integer.parseInt(size.trim()));
+        }
+
+        // Always write down the results, they are what a new baseline gets made of
+        final File report = new File(System.getProperty("performance.report", "build/reports/performance"));
+        report.mkdirs();
+        try (final OutputStream ostream = new FileOutputStream(new File(report, "results.properties"))) {
+            results.store(ostream, "spoonCompile performance results");
+        }
+
+        final File baselineFile = new File(System.getProperty("performance.baseline", "performance-baseline.properties"));
+        if (Boolean.getBoolean("performance.updateBaseline")) {
+            final Properties baseline = loadBaseline(baselineFile);
+            baseline.putAll(results);
+            try (final OutputStream ostream = new FileOutputStream(baselineFile)) {
+                baseline.store(ostream, "spoonCompile performance baseline");
+            }
+            return;
+        }
+
+        // Anything slower or larger than the baseline plus the tolerance is a regression,
+        // the heap getting its own tolerance as sampling can still miss a short-lived peak
+        final double tolerance = Double.parseDouble(System.getProperty("performance.tolerance", "0.25"));
+        final double heapTolerance = Double.parseDouble(System.getProperty("performance.heapTolerance", "0.5"));
+        final Properties baseline = loadBaseline(baselineFile);
+        final List<String> regressions = new ArrayList<>();
+        final List<String> missing = new ArrayList<>();
+        for (final String key : new TreeSet<>(results.stringPropertyNames())) {
+            final String expected = baseline.getProperty(key);
+            if (expected == null) {
+                missing.add(key);
+                continue;
+            }
+            final long actual = Long.parseLong(results.getProperty(key));
+            final double allowed = key.endsWith(".heap") ? heapTolerance : tolerance;
+            if (actual > Long.parseLong(expected) * (1.0 + allowed)) {
+                regressions.add(String.format("%s: %d against a baseline of %s", key, actual, expected));
+            }
+        }
+        Assert.assertTrue(String.join(System.lineSeparator(), regressions), regressions.isEmpty());
+
+        // Without a baseline there's nothing to compare against, which is neither a success nor a failure
+        Assume.assumeTrue(
+                String.format(
+                        "No baseline for %s in %s, record one with -Pperformance.updateBaseline",
+                        String.join(", ", missing),
+                        baselineFile
+                ),
+                missing.isEmpty()
+        );
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SyntheticProject {
+    private static final String PACKAGE = "eb2501.synthetic";
+
+    private final int files;
+    private final int bundles;
+    private final int packages;
+    private final Random random;
+
+    public SyntheticProject(final int files, final int bundles) {
+        this.files = files;
+        this.bundles = bundles;
+        this.packages = Math.max(1, files / 100);
+
+        // Always the same project for a given size, so that timings can be compared
+        this.random = new Random(files);
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+    }
+
+    private String getPackage(final int index) {
+        return String.format("%s.pkg%d", PACKAGE, index % packages);
+    }
+
+    private static String getName(final int index) {
+        return String.format("Type%d%s", index, Constants.SPOON_SUFFIX);
+    }
+
+    public File getSource(final File project, final int index) {
+        return new File(
+                project,
+                String.format("src/main/java/%s/%s.java", getPackage(index).replace('.', '/'), getName(index))
+        );
+    }
+
+    private List<File> generateBundles(final File folder) throws IOException {
+        final List<File> result = new ArrayList<>();
+        for (int i = 0; i < bundles; ++i) {
+            final String name = String.format("bundle%d", i);
+            final File project = new File(folder, name);
+            final String pkg = String.format("%s.%s", PACKAGE, name);
+            final String dir = pkg.replace('.', '/');
+            write(new File(project, "settings.gradle"), String.format("rootProject.name = '%s'%n", name));
+            write(new File(project, "build.gradle"), String.format(
+                    "plugins {%n" +
+                    "    id 'java'%n" +
+                    "}%n" +
+                    "%n" +
+                    "version '1.0'%n" +
+                    "%n" +
+                    "repositories {%n" +
+                    "    mavenLocal()%n" +
+                    "    mavenCentral()%n" +
+                    "}%n" +
+                    "%n" +
+                    "dependencies {%n" +
+                    "    compile 'fr.inria.gforge.spoon:spoon-core:6.2.0'%n" +
+                    "}%n"
+            ));
+            write(new File(project, String.format("src/main/java/%s/Rename.java", dir)), String.format(
+                    "package %s;%n" +
+                    "%n" +
+                    "public @interface Rename {%n" +
+                    "    String suffix();%n" +
+                    "}%n",
+                    pkg
+            ));
+            write(new File(project, String.format("src/main/java/%s/RenameProcessor.java", dir)), String.format(
+                    "package %s;%n" +
+                    "%n" +
+                    "import spoon.processing.AbstractAnnotationProcessor;%n" +
+                    "import spoon.reflect.declaration.CtField;%n" +
+                    "%n" +
+                    "public class RenameProcessor extends AbstractAnnotationProcessor<Rename, CtField<?>> {%n" +
+                    "%n" +
+                    "    @Override%n" +
+                    "    public void process(final Rename annotation, final CtField<?> element) {%n" +
+                    "        element.setSimpleName(element.getSimpleName() + annotation.suffix());%n" +
+                    "    }%n" +
+                    "}%n",
+                    pkg
+            ));
+            write(new File(project, "src/main/resources/META-INF/spoon-bundle.properties"), String.format(
+                    "processor.A.path=%s.RenameProcessor%n" +
+                    "processor.A.consumes=%s.Rename%n",
+                    pkg,
+                    pkg
+            ));
+            GradleRunner.create()
+                    .withProjectDir(project)
+                    .withArguments("jar", "-q")
+                    .build();
+            final File jar = new File(folder, name + ".jar");
+            FileUtils.copyFile(new File(project, String.format("build/libs/%s-1.0.jar", name)), jar);
+            FileUtils.deleteDirectory(project);
+            result.add(jar);
+        }
+        return result;
+    }
+
+    private String generateType(final int index) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("package %s;%n%n", getPackage(index)));
+        builder.append(String.format("public class %s {%n", getName(index)));
+
+        // A few references to earlier types, most of them close by as in a real code base
+        for (int i = 0; i < Math.min(index, 4); ++i) {
+            final int other = (i == 3) ? random.nextInt(index) : index - i - 1;
+            builder.append(String.format(
+                    "    private %s.%s ref%d;%n%n",
+                    getPackage(other),
+                    getName(other),
+                    i
+            ));
+            builder.append(String.format(
+                    "    public %s.%s getRef%d() {%n        return ref%d;%n    }%n%n",
+                    getPackage(other),
+                    getName(other),
+                    i,
+                    i
+            ));
+        }
+
+        // Some of the fields are handled by a bundle processor
+        if ((bundles > 0) && (index % 3 == 0)) {
+            builder.append(String.format(
+                    "    @%s.bundle%d.Rename(suffix = \"Renamed\")%n    private int counter;%n%n",
+                    PACKAGE,
+                    index % bundles
+            ));
+        }
+
+        builder.append(String.format("    public int compute(final int input) {%n"));
+        builder.append(String.format("        int result = input;%n"));
+        builder.append(String.format("        for (int i = 0; i < %d; ++i) {%n", 1 + index % 7));
+        builder.append(String.format("            result = (result * 31) ^ i;%n"));
+        builder.append(String.format("        }%n"));
+        builder.append(String.format("        return result;%n"));
+        builder.append(String.format("    }%n"));
+        builder.append(String.format("}%n"));
+        return builder.toString();
+    }
+
+    public void generate(final File project) throws IOException {
+        final List<File> jars = generateBundles(new File(project, "libs"));
+
+        write(new File(project, "settings.gradle"), String.format("rootProject.name = 'synthetic%d'%n", files));
+        write(new File(project, "gradle.properties"), String.format("org.gradle.jvmargs=-Xmx4g%n"));
+        final StringBuilder dependencies = new StringBuilder();
+        for (final File jar : jars) {
+            dependencies.append(String.format("    compile files('libs/%s')%n", jar.getName()));
+        }
+        write(new File(project, "build.gradle"), String.format(
+                "import java.lang.management.ManagementFactory%n" +
+                "import java.util.concurrent.atomic.AtomicBoolean%n" +
+                "import java.util.concurrent.atomic.AtomicLong%n" +
+                "import java.util.function.LongBinaryOperator%n" +
+                "%n" +
+                "plugins {%n" +
+                "    id 'java'%n" +
+                "    id 'eb2501.spoon'%n" +
+                "}%n" +
+                "%n" +
+                "dependencies {%n" +
+                "%s" +
+                "}%n" +
+                "%n" +
+                "// Peak heap used by the daemon over this build only, sampled as no pool tracks the heap as a whole,%n" +
+                "// and counted from what's left after a collection so that the garbage of earlier builds doesn't show%n" +
+                "def heap = ManagementFactory.memoryMXBean%n" +
+                "System.gc()%n" +
+                "def start = heap.heapMemoryUsage.used%n" +
+                "def peak = new AtomicLong(start)%n" +
+                "def sampling = new AtomicBoolean(true)%n" +
+                "def sampler = Thread.start {%n" +
+                "    while (sampling.get()) {%n" +
+                "        peak.accumulateAndGet(heap.heapMemoryUsage.used, { a, b -> Math.max(a, b) } as LongBinaryOperator)%n" +
+                "        sleep(5)%n" +
+                "    }%n" +
+                "}%n" +
+                "gradle.buildFinished {%n" +
+                "    sampling.set(false)%n" +
+                "    sampler.join()%n" +
+                "    file('peak-heap.txt').text = (peak.get() - start).toString()%n" +
+                "}%n",
+                dependencies
+        ));
+        for (int i = 0; i < files; ++i) {
+            write(getSource(project, i), generateType(i));
+        }
+    }
+}
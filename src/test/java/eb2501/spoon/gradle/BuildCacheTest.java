@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class BuildCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private BuildResult build(final String name) throws IOException {
+        final File cache = new File(tempFolder.getRoot(), "cache");
+        final File project = new File(tempFolder.getRoot(), name);
+        Scenario.unfold("no_processor_test", project);
+        FileUtils.writeStringToFile(
+                new File(project, "settings.gradle"),
+                String.format(
+                        "buildCache {%n    local(DirectoryBuildCache) {%n        directory = '%s'%n    }%n}%n",
+                        cache.getAbsolutePath().replace("\\", "\\\\")
+                ),
+                StandardCharsets.UTF_8
+        );
+        return GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(project)
+                .withArguments("compileJava", "--build-cache")
+                .build();
+    }
+
+    @Test
+    public void testRelocatable() throws IOException {
+
+        // The same project, checked out in another place, must get a hit
+        Assert.assertEquals(TaskOutcome.SUCCESS, build("first").task(":spoonCompile").getOutcome());
+        Assert.assertEquals(TaskOutcome.FROM_CACHE, build("second").task(":spoonCompile").getOutcome());
+        Assert.assertTrue(new File(
+                tempFolder.getRoot(),
+                "second/build/generated/source/spoon/main/eb2501/ephemeral/First.java"
+        ).exists());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ConcurrentProcessingTest {
+    private static final String[] NAMES = {"Alpha.java", "Beta.java", "Gamma.java", "Delta.java", "Empty.java"};
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File generate(final String name, final int threads, final boolean fuse) throws IOException {
+        final File project = new File(tempFolder.getRoot(), name);
+        Scenario.generateJars("bundle2", project);
+        Scenario.unfold(getClass(), project);
+        FileUtils.writeStringToFile(
+                new File(project, "build.gradle"),
+                String.format("%nspoonCompile {%n    processorThreads = %d%n    fuseProcessors = %b%n}%n", threads, fuse),
+                StandardCharsets.UTF_8,
+                true
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(project)
+                .withArguments("spoonCompile", "-q")
+                .build();
+        return new File(project, "build/generated/source/spoon/main/eb2501/ephemeral");
+    }
+
+    @Test
+    public void testSameOutput() throws IOException {
+        final File sequential = generate("sequential", 1, true);
+        final File concurrent = generate("concurrent", 4, true);
+        final File unfused = generate("unfused", 4, false);
+        for (final String name : NAMES) {
+            final byte[] expected = FileUtils.readFileToByteArray(new File(sequential, name));
+            Assert.assertArrayEquals(expected, FileUtils.readFileToByteArray(new File(concurrent, name)));
+            Assert.assertArrayEquals(expected, FileUtils.readFileToByteArray(new File(unfused, name)));
+        }
+
+        // The element-local processor did get to every method
+        final String alpha = FileUtils.readFileToString(new File(concurrent, "Alpha.java"), StandardCharsets.UTF_8);
+        Assert.assertTrue(alpha.contains("System.out.println(\"Alpha.get\")"));
+        Assert.assertTrue(alpha.contains("System.out.println(\"Alpha.link\")"));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import groovy.json.JsonSlurper;
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+public class IncrementalTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void before() {
+        Scenario.unfold(getClass(), tempFolder.getRoot());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readStatistics() {
+        final Map<String, Object> report = (Map<String, Object>)new JsonSlurper().parse(
+                new File(tempFolder.getRoot(), "build/reports/spoon/spoonCompile.json"),
+                StandardCharsets.UTF_8.name()
+        );
+        return (Map<String, Object>)report.get("statistics");
+    }
+
+    private String run() {
+        final StringWriter output = new StringWriter();
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("run", "-q")
+                .forwardStdOutput(output)
+                .build();
+        return output.toString();
+    }
+
+    @Test
+    public void testIncremental() throws IOException {
+        final File sources = new File(tempFolder.getRoot(), "src/main/java/eb2501/ephemeral");
+        final File generated = new File(tempFolder.getRoot(), "build/generated/source/spoon/main/eb2501/ephemeral");
+        Assert.assertEquals("2" + System.lineSeparator(), run());
+        Assert.assertTrue(new File(generated, "Third.java").exists());
+
+        // Changing a dependency must reprocess its dependents
+        final File second = new File(sources, "Second_S_.java");
+        FileUtils.writeStringToFile(
+                second,
+                FileUtils.readFileToString(second, StandardCharsets.UTF_8).replace("x = 2", "x = 4"),
+                StandardCharsets.UTF_8
+        );
+
+        // Removing a file must remove what it generated
+        Assert.assertTrue(new File(sources, "Third_S_.java").delete());
+
+        // Fourth gets reprocessed into the same content, so the new tree keeps the file as it was
+        final File fourth = new File(generated, "Fourth.java");
+        final long modified = fourth.lastModified();
+
+        Assert.assertEquals("4" + System.lineSeparator(), run());
+        Assert.assertFalse(new File(generated, "Third.java").exists());
+        Assert.assertTrue(new File(generated, "First.java").exists());
+        Assert.assertEquals(modified, fourth.lastModified());
+
+        // Second itself, First referencing it, and Fourth only referencing First
+        final Map<String, Object> statistics = readStatistics();
+        Assert.assertEquals(
+                Arrays.asList(
+                        "src/main/java/eb2501/ephemeral/First_S_.java",
+                        "src/main/java/eb2501/ephemeral/Fourth_S_.java",
+                        "src/main/java/eb2501/ephemeral/Second_S_.java"
+                ),
+                statistics.get("affectedUnits")
+        );
+        Assert.assertEquals(3, statistics.get("sources"));
+    }
+
+    @Test
+    public void testRemovedTemplate() throws IOException {
+        final File sources = new File(tempFolder.getRoot(), "src/main/java/eb2501/ephemeral");
+        Assert.assertEquals("2" + System.lineSeparator(), run());
+
+        // A removed template isn't a source the last execution knows about, so everything gets processed again
+        Assert.assertTrue(new File(sources, "Fifth_T_.java").delete());
+        Assert.assertEquals("2" + System.lineSeparator(), run());
+        Assert.assertEquals(
+                Arrays.asList(
+                        "src/main/java/eb2501/ephemeral/First_S_.java",
+                        "src/main/java/eb2501/ephemeral/Fourth_S_.java",
+                        "src/main/java/eb2501/ephemeral/Second_S_.java",
+                        "src/main/java/eb2501/ephemeral/Third_S_.java"
+                ),
+                readStatistics().get("affectedUnits")
+        );
+    }
+}
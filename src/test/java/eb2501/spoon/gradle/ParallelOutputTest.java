@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import eb2501.spoon.SpoonApiBuilder;
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class ParallelOutputTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File generate(final String scenario, final String name, final int threads) throws IOException {
+        final File project = new File(tempFolder.getRoot(), name);
+        Scenario.unfold(scenario, project);
+        FileUtils.writeStringToFile(
+                new File(project, "build.gradle"),
+                String.format("%nspoonCompile {%n    printThreads = %d%n}%n", threads),
+                StandardCharsets.UTF_8,
+                true
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(project)
+                .withArguments("spoonCompile", "-q")
+                .build();
+        return new File(project, "build/generated/source/spoon/main/eb2501/ephemeral");
+    }
+
+    @Test
+    public void testSameOutput() throws IOException {
+        final File sequential = generate("incremental_test", "sequential", 1);
+        final File parallel = generate("incremental_test", "parallel", 4);
+        for (final String name : new String[] {"First.java", "Second.java", "Third.java"}) {
+            Assert.assertArrayEquals(
+                    FileUtils.readFileToByteArray(new File(sequential, name)),
+                    FileUtils.readFileToByteArray(new File(parallel, name))
+            );
+        }
+    }
+
+    @Test
+    public void testSameOutputWithAutoImports() throws IOException {
+
+        // Only classpath types, all referenced by their qualified name, so that the imports get computed while printing
+        final File sequential = generate("parallel_output_test", "sequential", 1);
+        final File parallel = generate("parallel_output_test", "parallel", 4);
+        for (final String name : new String[] {
+                "Registry.java", "Worker.java", "Formatter.java", "Streams.java", "Cache.java", "Events.java"
+        }) {
+            Assert.assertArrayEquals(
+                    FileUtils.readFileToByteArray(new File(sequential, name)),
+                    FileUtils.readFileToByteArray(new File(parallel, name))
+            );
+        }
+        final String worker = FileUtils.readFileToString(new File(parallel, "Worker.java"), StandardCharsets.UTF_8);
+        Assert.assertTrue(worker.contains("import java.util.concurrent.Callable;"));
+    }
+
+    @Test
+    public void testSameOutputAsSpoon() throws IOException {
+
+        // Spoon prints in the platform charset, which the daemon must then share with this JVM
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "parallel/gradle.properties"),
+                String.format("org.gradle.jvmargs=-Dfile.encoding=%s%n", Charset.defaultCharset().name()),
+                StandardCharsets.UTF_8
+        );
+        final File parallel = generate("output_encoding_test", "parallel", 4);
+
+        // What the task used to do, with Spoon's own output processor
+        final File sources = new File(tempFolder.getRoot(), "parallel/src/main/java/eb2501/ephemeral");
+        final File spoon = new File(tempFolder.getRoot(), "spoon");
+        new SpoonApiBuilder()
+                .withComplianceLevel(8)
+                .withAutoImports(true)
+                .withPreserveLineNumbers(true)
+                .withTabulationSize(-1)
+                .withPreserveComments(true)
+                .withSkipSelfChecks(false)
+                .withEncoding(StandardCharsets.UTF_8)
+                .withInputSources(new File(sources, "Greeting_S_.java"))
+                .withTemplateSources(new File(sources, "Shape_T_.java"))
+                .withOutputDirectory(spoon)
+                .withSourceClasspath(Collections.emptyList())
+                .withProcessorInstances(new TypeProcessor(), new TypeRefProcessor())
+                .build()
+                .run();
+        for (final String name : new String[] {"Greeting.java", "Shape_T_.java"}) {
+            Assert.assertArrayEquals(
+                    FileUtils.readFileToByteArray(new File(spoon, "eb2501/ephemeral/" + name)),
+                    FileUtils.readFileToByteArray(new File(parallel, name))
+            );
+        }
+    }
+}
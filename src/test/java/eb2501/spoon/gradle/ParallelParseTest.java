@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ParallelParseTest {
+    private static final String[] STATISTICS = {"compilationUnits", "types", "elements", "elementsByKind"};
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File generate(final String name, final int threads) throws IOException {
+        final File project = new File(tempFolder.getRoot(), name);
+        Scenario.unfold(getClass(), project);
+        FileUtils.writeStringToFile(
+                new File(project, "build.gradle"),
+                String.format("%nspoonCompile {%n    parseThreads = %d%n}%n", threads),
+                StandardCharsets.UTF_8,
+                true
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(project)
+                .withArguments("spoonCompile", "-q")
+                .build();
+        return project;
+    }
+
+    private static String getStatistic(final File project, final String name) throws IOException {
+        final String report = FileUtils.readFileToString(
+                new File(project, "build/reports/spoon/spoonCompile.json"),
+                StandardCharsets.UTF_8
+        );
+        final Matcher matcher = Pattern.compile(String.format("\"%s\": (\\{[^}]*}|\\d+)", name)).matcher(report);
+        Assert.assertTrue(name, matcher.find());
+        return matcher.group(1);
+    }
+
+    // Qualified names of the printed types, by way of their path
+    private static List<String> getOutputs(final File project) {
+        final File root = new File(project, "build/generated/source/spoon/main");
+        final List<String> result = new ArrayList<>();
+        for (final File file : FileUtils.listFiles(root, new String[] {"java"}, true)) {
+            result.add(root.toPath().relativize(file.toPath()).toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testSameModel() throws IOException {
+        final File sequential = generate("sequential", 1);
+        final File parallel = generate("parallel", 4);
+
+        // Four independent clusters, so four shards for four threads, none of them for the sequential build
+        Assert.assertEquals("0", getStatistic(sequential, "parseShards"));
+        Assert.assertTrue(Integer.parseInt(getStatistic(parallel, "parseShards")) > 1);
+
+        // Shards or not, the very same model
+        for (final String name : STATISTICS) {
+            Assert.assertEquals(name, getStatistic(sequential, name), getStatistic(parallel, name));
+        }
+        final List<String> outputs = getOutputs(sequential);
+        Assert.assertEquals(13, outputs.size());
+        Assert.assertEquals(outputs, getOutputs(parallel));
+        for (final String output : outputs) {
+            Assert.assertArrayEquals(
+                    output,
+                    FileUtils.readFileToByteArray(new File(sequential, "build/generated/source/spoon/main/" + output)),
+                    FileUtils.readFileToByteArray(new File(parallel, "build/generated/source/spoon/main/" + output))
+            );
+        }
+    }
+}
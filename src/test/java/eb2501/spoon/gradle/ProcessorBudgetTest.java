@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ProcessorBudgetTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private void configure(final String configuration) throws IOException {
+        Scenario.unfold("incremental_test", tempFolder.getRoot());
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "build.gradle"),
+                String.format("%nspoonCompile {%n%s}%n", configuration),
+                StandardCharsets.UTF_8,
+                true
+        );
+    }
+
+    @Test
+    public void testProfile() throws IOException {
+        configure(String.format("    profileProcessors = true%n"));
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonCompile", "-q")
+                .build();
+        final String report = FileUtils.readFileToString(
+                new File(tempFolder.getRoot(), "build/reports/spoon/spoonCompile.json"),
+                StandardCharsets.UTF_8
+        );
+        Assert.assertTrue(report.contains("\"eb2501.spoon.gradle.TypeRefProcessor\": {"));
+    }
+
+    @Test
+    public void testBudgetExceeded() throws IOException {
+
+        // No processor can ever fit a negative budget
+        configure(String.format(
+                "    processorBudget 'eb2501.spoon.gradle.TypeProcessor', -1%n    failOnBudgetExceeded = true%n"
+        ));
+        final BuildResult result = GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonCompile")
+                .buildAndFail();
+        Assert.assertTrue(result.getOutput().contains("Processor 'eb2501.spoon.gradle.TypeProcessor' took"));
+    }
+
+    @Test
+    public void testCpuAndAllocationBudgets() throws IOException {
+
+        // The wall budget is generous, only the other two can be exceeded
+        configure(String.format(
+                "    processorBudget 'eb2501.spoon.gradle.TypeProcessor', 'wall:600000,cpu:-1,alloc:-1'%n"
+                        + "    failOnBudgetExceeded = true%n"
+        ));
+        final BuildResult result = GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonCompile")
+                .buildAndFail();
+        Assert.assertFalse(result.getOutput().contains("Processor 'eb2501.spoon.gradle.TypeProcessor' took"));
+        Assert.assertTrue(result.getOutput().contains("Processor 'eb2501.spoon.gradle.TypeProcessor' used"));
+        Assert.assertTrue(result.getOutput().contains("Processor 'eb2501.spoon.gradle.TypeProcessor' allocated"));
+    }
+}
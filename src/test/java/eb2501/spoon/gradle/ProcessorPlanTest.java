@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ProcessorPlanTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void before() {
+        Scenario.unfold(getClass(), tempFolder.getRoot());
+    }
+
+    @Test
+    public void testPlan() {
+        final BuildResult result = GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonPlan", "-q")
+                .build();
+
+        // Third is produced by both First and Second, so it has to wait for Second
+        final String output = result.getOutput();
+        Assert.assertTrue(output.contains("Level 0: 1 processors"));
+        Assert.assertTrue(output.indexOf("eb2501.ephemeral.FirstProcessor") < output.indexOf("Level 1"));
+        Assert.assertTrue(output.indexOf("eb2501.ephemeral.SecondProcessor") < output.indexOf("Level 2"));
+        Assert.assertTrue(output.indexOf("eb2501.ephemeral.ThirdProcessor") > output.indexOf("Level 2"));
+        Assert.assertTrue(output.contains("eb2501.ephemeral.ThirdProcessor (concurrent)"));
+        Assert.assertTrue(output.contains("eb2501.ephemeral.SecondProcessor (element-local)"));
+    }
+
+    @Test
+    public void testProduces() throws IOException {
+
+        // Overriding A, so that Second has no producer left and Third only comes after A and B
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "bundle/META-INF/spoon-bundle.properties"),
+                String.format("processor.A.produces= eb2501.ephemeral.Third %n"),
+                StandardCharsets.ISO_8859_1,
+                true
+        );
+        final BuildResult result = GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonPlan", "-q")
+                .build();
+        final String output = result.getOutput();
+        Assert.assertTrue(output.contains("Level 0: 2 processors"));
+        Assert.assertTrue(output.indexOf("eb2501.ephemeral.ThirdProcessor") > output.indexOf("Level 1"));
+    }
+
+    @Test
+    public void testDuplicateProduce() throws IOException {
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "bundle/META-INF/spoon-bundle.properties"),
+                String.format("processor.A.produces=eb2501.ephemeral.Third, eb2501.ephemeral.Third%n"),
+                StandardCharsets.ISO_8859_1,
+                true
+        );
+        final BuildResult result = GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonPlan")
+                .buildAndFail();
+        Assert.assertTrue(result.getOutput().contains("gives two times the same produce"));
+    }
+
+    @Test
+    public void testCycle() throws IOException {
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "bundle/META-INF/spoon-bundle.properties"),
+                String.format("processor.C.produces=eb2501.ephemeral.First%n"),
+                StandardCharsets.ISO_8859_1,
+                true
+        );
+        final BuildResult result = GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonPlan")
+                .buildAndFail();
+        Assert.assertTrue(result.getOutput().contains("Processors form a cycle through their produces"));
+    }
+}
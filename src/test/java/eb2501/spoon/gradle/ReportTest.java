@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ReportTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testReport() throws IOException {
+        Scenario.unfold("incremental_test", tempFolder.getRoot());
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "build.gradle"),
+                String.format("%nspoonCompile {%n    trace = true%n}%n"),
+                StandardCharsets.UTF_8,
+                true
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonCompile", "-q")
+                .build();
+
+        final File folder = new File(tempFolder.getRoot(), "build/reports/spoon");
+        final String report = FileUtils.readFileToString(new File(folder, "spoonCompile.json"), StandardCharsets.UTF_8);
+        for (final String phase : new String[] {"buildModel", "processing", "printing"}) {
+            Assert.assertTrue(report.contains(String.format("\"name\": \"%s\"", phase)));
+        }
+        Assert.assertTrue(report.contains("\"compilationUnits\": "));
+        final String trace = FileUtils.readFileToString(new File(folder, "spoonCompile-trace.json"), StandardCharsets.UTF_8);
+        Assert.assertTrue(trace.contains("\"traceEvents\": ["));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        Scenario.unfold("incremental_test", tempFolder.getRoot());
+        final File file = new File(tempFolder.getRoot(), "build/reports/spoon/spoonCompile.json");
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonCompile", "-q")
+                .build();
+        String report = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        Assert.assertTrue(report.contains("\"snapshotReused\": false"));
+        Assert.assertTrue(report.contains("\"snapshotBytes\": "));
+
+        // Nothing changed, so the whole model comes back from the snapshot without being saved again
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("spoonCompile", "-q", "--rerun-tasks")
+                .build();
+        report = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        Assert.assertTrue(report.contains("\"snapshotReused\": true"));
+        Assert.assertFalse(report.contains("\"snapshotBytes\": "));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+public class SharedClasspathTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String run(final boolean shared, final String isolationMode) throws IOException {
+        Scenario.unfold("spoon_api_test", tempFolder.getRoot());
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "build.gradle"),
+                String.format(
+                        "%nspoonCompile {%n    sharedClasspath = %s%n    isolationMode = org.gradle.workers.IsolationMode.%s%n}%n",
+                        shared,
+                        isolationMode
+                ),
+                StandardCharsets.UTF_8,
+                true
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments(
+                        "spoonCompile",
+                        "-q",
+                        String.format("-Ptest_classpath=%s", System.getProperty("test_classpath"))
+                )
+                .build();
+        return FileUtils.readFileToString(
+                new File(tempFolder.getRoot(), "build/reports/spoon/spoonCompile.json"),
+                StandardCharsets.UTF_8
+        );
+    }
+
+    @Test
+    public void testShared() throws IOException {
+        Assert.assertTrue(Pattern.compile("\"sharedClasspathJars\": [1-9]").matcher(run(true, "NONE")).find());
+    }
+
+    @Test
+    public void testNotShared() throws IOException {
+
+        // Whatever got indexed by other builds of the daemon is gone by now
+        Assert.assertTrue(run(false, "NONE").contains("\"sharedClasspathJars\": 0"));
+    }
+
+    @Test
+    public void testNotSharedInWorkerProcess() throws IOException {
+
+        // Nothing would ever clear the registry of the worker process
+        Assert.assertTrue(run(true, "PROCESS").contains("\"sharedClasspathJars\": 0"));
+    }
+}
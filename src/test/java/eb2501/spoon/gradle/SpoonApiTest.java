@@ -16,11 +16,14 @@
 
 package eb2501.spoon.gradle;
 
+import org.apache.commons.io.FileUtils;
 import org.gradle.testkit.runner.GradleRunner;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class SpoonApiTest {
 
@@ -49,4 +52,28 @@ public class SpoonApiTest {
         );
         Assert.assertFalse(file.exists());
     }
+
+    @Test
+    public void testTestModel() throws IOException {
+
+        // Without sources of its own, the compile task would be skipped
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "src/test/java/eb2501/ephemeral/Second_S_.java"),
+                String.format("package eb2501.ephemeral;%n%npublic class Second_S_ {%n}%n"),
+                StandardCharsets.UTF_8
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments(
+                        "test",
+                        "-q",
+                        String.format("-Ptest_classpath=%s", System.getProperty("test_classpath"))
+                )
+                .build();
+
+        // The test JVM only got the manifest, along with the model it points to
+        Assert.assertTrue(new File(tempFolder.getRoot(), "build/tmp/spoonCompileTest/test-manifest.bin").exists());
+        Assert.assertTrue(new File(tempFolder.getRoot(), "build/tmp/spoonCompileTest/test-model.bin").exists());
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class StubCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File[] run(final String settings) throws IOException {
+        final File project = tempFolder.newFolder("project");
+        final File testKit = tempFolder.newFolder("testkit");
+        Scenario.unfold("spoon_api_test", project);
+        FileUtils.writeStringToFile(
+                new File(project, "build.gradle"),
+                String.format("%nspoonCompile {%n    %s%n}%n", settings),
+                StandardCharsets.UTF_8,
+                true
+        );
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(project)
+                .withTestKitDir(testKit)
+                .withArguments(
+                        "spoonCompile",
+                        "-q",
+                        String.format("-Ptest_classpath=%s", System.getProperty("test_classpath"))
+                )
+                .build();
+        final File[] result = new File(testKit, "caches/eb2501.spoon/stubs").listFiles((d, n) -> n.endsWith(".stubs"));
+        return (result == null) ? new File[0] : result;
+    }
+
+    @Test
+    public void testStubs() throws IOException {
+
+        // The classpath JARs all got their stubs in the Gradle user home
+        Assert.assertTrue(run("sharedClasspath = false").length > 0);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+
+        // Everything gets evicted, but for the stubs written last, which are still mapped
+        Assert.assertEquals(1, run("stubCacheMaxSize = 1").length);
+    }
+}
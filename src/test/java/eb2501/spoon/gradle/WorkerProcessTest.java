@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.spoon.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+public class WorkerProcessTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void before() throws IOException {
+        Scenario.unfold("no_processor_test", tempFolder.getRoot());
+        FileUtils.writeStringToFile(
+                new File(tempFolder.getRoot(), "build.gradle"),
+                String.format(
+                        "%nspoonCompile {%n" +
+                        "    isolationMode = org.gradle.workers.IsolationMode.PROCESS%n" +
+                        "    workerMaxHeapSize = '256m'%n" +
+                        "    workerJvmArgs = ['-XX:+UseSerialGC']%n" +
+                        "}%n" +
+                        "gradle.buildFinished {%n" +
+                        "    file('daemon.txt').text = java.lang.management.ManagementFactory.runtimeMXBean.name%n" +
+                        "}%n"
+                ),
+                StandardCharsets.UTF_8,
+                true
+        );
+    }
+
+    @Test
+    public void testWorkerProcess() throws IOException {
+        final StringWriter output = new StringWriter();
+        GradleRunner.create()
+                .withPluginClasspath()
+                .withProjectDir(tempFolder.getRoot())
+                .withArguments("run", "-q")
+                .forwardStdOutput(output)
+                .build();
+        Assert.assertEquals("2" + System.lineSeparator(), output.toString());
+
+        // Only a JVM of its own has a different name, and the heap and arguments it got started with
+        final String daemon = FileUtils.readFileToString(
+                new File(tempFolder.getRoot(), "daemon.txt"),
+                StandardCharsets.UTF_8
+        );
+        final String report = FileUtils.readFileToString(
+                new File(tempFolder.getRoot(), "build/reports/spoon/spoonCompile.json"),
+                StandardCharsets.UTF_8
+        );
+        Assert.assertTrue(report.contains("\"jvm\": {\"name\": "));
+        Assert.assertFalse(report.contains(String.format("\"name\": \"%s\"", daemon.trim())));
+        Assert.assertTrue(report.contains("\"-Xmx256m\""));
+        Assert.assertTrue(report.contains("\"-XX:+UseSerialGC\""));
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.ephemeral;
+
+import org.apache.log4j.Level;
+import spoon.processing.AbstractProcessor;
+import spoon.reflect.declaration.CtClass;
+
+public class CheckProcessor extends AbstractProcessor<CtClass<?>> {
+
+    @Override
+    public boolean isToBeProcessed(CtClass<?> candidate) {
+        return candidate.getAnnotation(Check.class) != null;
+    }
+
+    @Override
+    public void process(CtClass<?> element) {
+        if (element.getMethods().isEmpty()) {
+            getEnvironment().report(this, Level.WARN, element, "Checked class without any method");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.ephemeral;
+
+@Check
+public class Alpha {
+    @Rename(name = "value")
+    public int x = 5;
+
+    @Rename(name = "next")
+    public Beta y;
+
+    @Trace
+    public int get() {
+        return 1;
+    }
+
+    @Trace
+    public String link(final Beta other) {
+        return String.valueOf(other);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.ephemeral.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Bus {
+    public interface Listener<E extends Event<?>> {
+        void on(E event);
+    }
+
+    private final List<Listener<Click>> listeners = new ArrayList<>();
+
+    public void subscribe(final Listener<Click> listener) {
+        listeners.add(listener);
+    }
+
+    public void click(final int button) {
+        final Click click = new Click(button);
+        for (final Bus.Listener<Click> listener : listeners) {
+            listener.on(click);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.ephemeral.trees;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Branch implements Node {
+    public final List<Node> children = new ArrayList<>();
+
+    @Override
+    public <R> R accept(final Visitor<R> visitor) {
+        return visitor.visitBranch(this);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.ephemeral.trees;
+
+public class Counter implements Node.Visitor<Integer> {
+    @Override
+    public Integer visitLeaf(final Leaf leaf) {
+        return 1;
+    }
+
+    @Override
+    public Integer visitBranch(final Branch branch) {
+        int result = 0;
+        for (final Node child : branch.children) {
+            result += child.accept(this);
+        }
+        return result;
+    }
+}
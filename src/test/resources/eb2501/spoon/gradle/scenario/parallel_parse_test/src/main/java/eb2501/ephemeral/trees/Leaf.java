@@ -0,0 +1,30 @@
+/*
+ * Copyright 2018 eb2501@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eb2501.ephemeral.trees;
+
+public class Leaf implements Node {
+    public final String label;
+
+    public Leaf(final String label) {
+        this.label = label;
+    }
+
+    @Override
+    public <R> R accept(final Node.Visitor<R> visitor) {
+        return visitor.visitLeaf(this);
+    }
+}
@@ -18,9 +18,14 @@ package eb2501.ephemeral;
 
 import eb2501.spoon.SpoonApiFactory;
 import spoon.SpoonAPI;
+import spoon.reflect.factory.Factory;
 import org.junit.Test;
 import org.junit.Assert;
 
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
 public class MainTest {
 
     @Test
@@ -32,4 +37,50 @@ public class MainTest {
         spoonApi.run();
         Assert.assertEquals(1, spoonApi.getEnvironment().getErrorCount());
     }
+
+    @Test
+    public void isolationTest() {
+
+        // The model is parsed once, but each test gets its own copy to process
+        for (int i = 0; i < 2; ++i) {
+            final SpoonAPI spoonApi = SpoonApiFactory.createTest(
+                    MainTest.class.getResource("First_R_.java"),
+                    RejectProcessor.class
+            );
+            final Factory factory = spoonApi.getFactory();
+            Assert.assertNotNull(factory.Type().get("eb2501.ephemeral.First_R_"));
+            Assert.assertNull(factory.Type().get("eb2501.ephemeral.Added"));
+            spoonApi.run();
+            Assert.assertEquals(1, spoonApi.getEnvironment().getErrorCount());
+
+            // None of which may show in the copy the next test gets
+            factory.Class().create("eb2501.ephemeral.Added");
+            factory.Type().get("eb2501.ephemeral.First_R_").delete();
+        }
+    }
+
+    @Test
+    public void defaultBuilderTest() {
+
+        // Handed over by the compile task, as nothing the model depends on gets changed
+        for (int i = 0; i < 2; ++i) {
+            final SpoonAPI spoonApi = SpoonApiFactory.createDefaultBuilder()
+                    .withOutputDirectory(null)
+                    .build();
+            spoonApi.buildModel();
+            Assert.assertNotNull(spoonApi.getFactory().Type().get(MainTest.class.getName()));
+        }
+    }
+
+    @Test
+    public void concurrentTest() {
+
+        // Created and processed from several threads, each with a model of its own
+        final List<URL> inputs = Collections.nCopies(8, MainTest.class.getResource("First_R_.java"));
+        final List<SpoonAPI> spoonApis = SpoonApiFactory.createTests(inputs, RejectProcessor.class);
+        spoonApis.parallelStream().forEach(SpoonAPI::run);
+        for (final SpoonAPI spoonApi : spoonApis) {
+            Assert.assertEquals(1, spoonApi.getEnvironment().getErrorCount());
+        }
+    }
 }